@@ -8,6 +8,7 @@ import java.util.Map;
 import org.apache.log4j.PropertyConfigurator;
 import org.apache.log4j.xml.DOMConfigurator;
 import org.hazelcast.server.persistence.MapSolrStore;
+import org.hazelcast.server.persistence.QueueSolrStore;
 import org.tanukisoftware.wrapper.WrapperManager;
 
 import com.hazelcast.config.ClasspathXmlConfig;
@@ -20,6 +21,7 @@ import com.hazelcast.core.EntryListener;
 import com.hazelcast.core.Hazelcast;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.IMap;
+import com.hazelcast.core.IQueue;
 import com.hazelcast.map.MapStoreWrapper;
 import com.hazelcast.map.proxy.MapProxyImpl;
 
@@ -213,7 +215,32 @@ public class HazelcastServerApp<K, V> implements EntryListener<K, V>, Distribute
       if (idListener != null) {
         imap.removeEntryListener(idListener);
       }
+
+      MapSolrStore mapStore = MapSolrStore.getStore(imap.getName());
+      if (mapStore != null) {
+        if (isOldestMember()) {
+          mapStore.deleteAllPersisted();
+        } else {
+          mapStore.clearLocal(); //ÿԱҪػûдSolrĻ,delete-by-query֮дȥ
+        }
+        mapStore.destroy(); //Hazelcast 3.2 destroy MapʱMapStore.destroy(),ͷ߳,ʱMBean
+      }
+    } else if (event.getDistributedObject() instanceof IQueue) {
+      IQueue iqueue = (IQueue) event.getDistributedObject();
+
+      QueueSolrStore queueStore = QueueSolrStore.getStore(iqueue.getName());
+      if (queueStore != null) {
+        if (isOldestMember()) {
+          queueStore.deleteAllPersisted();
+        }
+        queueStore.destroy(); //QueueStoreûڻص,ͷŹļȺ
+      }
     }
   }
 
+  //ֻüȺϵĳԱȥ־û,ÿԱһdelete-by-query
+  private boolean isOldestMember() {
+    return _hazelcastInstance.getCluster().getMembers().iterator().next().localMember();
+  }
+
 }
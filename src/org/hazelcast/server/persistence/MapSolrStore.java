@@ -1,18 +1,26 @@
 package org.hazelcast.server.persistence;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 
 import org.wjw.efjson.JsonArray;
@@ -21,11 +29,15 @@ import org.wjw.efjson.JsonObject;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.MapLoaderLifecycleSupport;
 import com.hazelcast.core.MapStore;
+import com.hazelcast.core.Member;
+import com.hazelcast.core.MigrationEvent;
+import com.hazelcast.core.MigrationListener;
+import com.hazelcast.core.Partition;
 import com.hazelcast.logging.ILogger;
 import com.hazelcast.logging.Logger;
 
 @SuppressWarnings("unchecked")
-public class MapSolrStore<K, V> implements MapLoaderLifecycleSupport, MapStore<K, V>, Runnable {
+public class MapSolrStore<K, V> implements MapLoaderLifecycleSupport, MapStore<K, V> {
   private final ILogger _logger = Logger.getLogger(MapSolrStore.class.getName());
 
   static final String MEMCACHED_PREFIX = "hz_memcache_";
@@ -35,30 +47,65 @@ public class MapSolrStore<K, V> implements MapLoaderLifecycleSupport, MapStore<K
   private String _coreName = "collection1";
   private int _connectTimeout = 60 * 1000; //ӳʱ
   private int _readTimeout = 60 * 1000; //ʱ
+  private long _operationTimeout = -1; //һβԵʱ,ĬӳʱӶʱ
+  private final SolrCircuitBreaker _breaker = SolrCircuitBreaker.getInstance();
 
-  private JsonArray _stateArray;
-  private java.util.List<String> _urlGets;
-  private java.util.List<String> _urlUpdates;
-  private java.util.List<String> _urlSelects;
+  private SolrTopology _topology; //StoreõļȺ:б,shard·ɱ
+  private long _topologyRefreshInterval = SolrTopology.DEFAULT_REFRESH_INTERVAL; //鼯Ⱥ״̬ļ()
+  private SolrCommitPolicy _commitPolicy; //дSolrԺݿɼ
   private boolean _deleteOnEvict = false; //ǷEvictʱɾ־û
   private boolean _loadAll = false; //Ƿڳʼʱͼ
+  private int _batchSize = SolrTools.DEFAULT_BATCH_SIZE; //storeAllʱÿupdateĵ
+  private int _loadBatchSize = SolrTools.DEFAULT_LOAD_BATCH_SIZE; //loadAllʱÿrealtime getid
+  private int _keysPageSize = SolrTools.DEFAULT_KEYS_PAGE_SIZE; //loadAllKeysʱÿҳĳʼĵ
+  private boolean _useExport = false; //loadAllKeysʱǷ/exportһԵеkey
+  private int _maxInitialKeys = 0; //ÿڵloadAllKeys෵صkey,0ʾ.keyԤ,һηʱload()ȡ
+  private boolean _writeBehind = false; //ǷStoreԼ첽дSolr
+  private boolean _hedgedReads = false; //loadʱǷrealtime getԳ
+  private long _hedgeDelay = 0; //Գǰȴĺ,0ʾù۲쵽p95
+  private int _hedgeBudget = SolrHedgePolicy.DEFAULT_BUDGET_PERCENT; //Գռgetİٷֱ
+  private SolrHedgePolicy _hedgePolicy;
+  private boolean _useBloomFilter = false; //loadǰǷBloomһڵkey
+  private long _bloomFilterExpectedKeys = SolrBloomFilter.DEFAULT_EXPECTED_KEYS;
+  private double _bloomFilterFpp = SolrBloomFilter.DEFAULT_FPP;
+  private SolrBloomFilter _bloomFilter; //_useBloomFilterΪtrueʱinit()ﴴ
+  private boolean _skipUnchanged = false; //ݺһдSolrһʱд
+  private int _digestMaxEntries = SolrDigestCache.DEFAULT_MAX_ENTRIES;
+  private SolrDigestCache _digests; //_skipUnchangedΪtrueʱinit()ﴴ
+  private String _migrationListenerId;
+  private final AtomicBoolean _destroyed = new AtomicBoolean(false);
+  private final AtomicLong _skippedWrites = new AtomicLong();
+  private long _expirySweepInterval = SolrExpirySweeper.DEFAULT_SWEEP_INTERVAL; //̨ɾĵļ()
+  private int _expiryEvictMaxKeys = SolrExpirySweeper.DEFAULT_MAX_EVICTIONS; //Ƕٸػȴkey
+  private SolrExpirySweeper _expirySweeper; //йʱMapinit()ﴴ
+  private long _timeToLive = 0; //Mapõtime-to-live-seconds(),memcacheMapȱʡ30,0ʾ
+  private String _valueCodecName = SolrValueCodec.JSON;
+  private SolrValueCodec _valueCodec; //init()ﴴ
+  private String _idFormat = SolrIdCodec.LEGACY;
+  private SolrIdCodec _idCodec; //init()ﴴ
+  private int _writeBehindMaxEntries = SolrWriteBehindBuffer.DEFAULT_MAX_ENTRIES;
+  private int _writeBehindFlushSize = SolrWriteBehindBuffer.DEFAULT_FLUSH_SIZE;
+  private long _writeBehindFlushDelay = SolrWriteBehindBuffer.DEFAULT_FLUSH_DELAY;
+  private SolrWriteBehindBuffer<K, V> _writeBehindBuffer; //_writeBehindΪtrueʱinit()ﴴ
 
   private HazelcastInstance _hazelcastInstance;
   private String _mapName;
   private Properties _properties;
 
-  private Lock _lockGet = new ReentrantLock();
-  private int _indexGet = -1;
-  private Lock _lockPost = new ReentrantLock();
-  private int _indexPost = -1;
-  private Lock _lockSelect = new ReentrantLock();
-  private int _indexSelect = -1;
+  //ֵǼǵStoreʵ,MapQueuedestroyʱҵӦStore־û
+  private static final java.util.concurrent.ConcurrentMap<String, MapSolrStore<?, ?>> _stores = new java.util.concurrent.ConcurrentHashMap<String, MapSolrStore<?, ?>>();
 
-  private ScheduledExecutorService _scheduleSync = Executors.newSingleThreadScheduledExecutor(); //ˢSolrȺ״̬Scheduled
+  /**
+   * mapNameǼǵMapSolrStore,û򷵻null
+   */
+  public static MapSolrStore<?, ?> getStore(String mapName) {
+    return _stores.get(mapName);
+  }
 
   public MapSolrStore(String mapName, Properties properties) {
     _mapName = mapName;
     _properties = properties;
+    _stores.put(_mapName, this);
 
     try {
       if (_properties.getProperty(SolrTools.SOLR_SERVER_URLS) == null) {
@@ -74,35 +121,98 @@ public class MapSolrStore<K, V> implements MapLoaderLifecycleSupport, MapStore<K
       if (_properties.getProperty(SolrTools.READ_TIMEOUT) != null) {
         _readTimeout = Integer.parseInt(_properties.getProperty(SolrTools.READ_TIMEOUT)) * 1000;
       }
+      if (_properties.getProperty(SolrTools.OPERATION_TIMEOUT) != null) {
+        _operationTimeout = Long.parseLong(_properties.getProperty(SolrTools.OPERATION_TIMEOUT)) * 1000;
+      }
+      if (_operationTimeout <= 0) {
+        _operationTimeout = _connectTimeout + _readTimeout;
+      }
       if (_properties.getProperty(SolrTools.DELETE_ON_EVICT) != null) {
         _deleteOnEvict = Boolean.parseBoolean(_properties.getProperty(SolrTools.DELETE_ON_EVICT));
       }
       if (_properties.getProperty(SolrTools.LOAD_ALL) != null) {
         _loadAll = Boolean.parseBoolean(_properties.getProperty(SolrTools.LOAD_ALL));
       }
+      if (_properties.getProperty(SolrTools.BATCH_SIZE) != null) {
+        _batchSize = Integer.parseInt(_properties.getProperty(SolrTools.BATCH_SIZE));
+      }
+      if (_properties.getProperty(SolrTools.LOAD_BATCH_SIZE) != null) {
+        _loadBatchSize = Integer.parseInt(_properties.getProperty(SolrTools.LOAD_BATCH_SIZE));
+      }
+      if (_properties.getProperty(SolrTools.KEYS_PAGE_SIZE) != null) {
+        _keysPageSize = Integer.parseInt(_properties.getProperty(SolrTools.KEYS_PAGE_SIZE));
+      }
+      if (_properties.getProperty(SolrTools.USE_EXPORT) != null) {
+        _useExport = Boolean.parseBoolean(_properties.getProperty(SolrTools.USE_EXPORT));
+      }
+      if (_properties.getProperty(SolrTools.MAX_INITIAL_KEYS) != null) {
+        _maxInitialKeys = Integer.parseInt(_properties.getProperty(SolrTools.MAX_INITIAL_KEYS));
+      }
+      if (_properties.getProperty(SolrTools.WRITE_BEHIND) != null) {
+        _writeBehind = Boolean.parseBoolean(_properties.getProperty(SolrTools.WRITE_BEHIND));
+      }
+      if (_properties.getProperty(SolrTools.WRITE_BEHIND_MAX_ENTRIES) != null) {
+        _writeBehindMaxEntries = Integer.parseInt(_properties.getProperty(SolrTools.WRITE_BEHIND_MAX_ENTRIES));
+      }
+      if (_properties.getProperty(SolrTools.WRITE_BEHIND_FLUSH_SIZE) != null) {
+        _writeBehindFlushSize = Integer.parseInt(_properties.getProperty(SolrTools.WRITE_BEHIND_FLUSH_SIZE));
+      }
+      if (_properties.getProperty(SolrTools.WRITE_BEHIND_FLUSH_DELAY) != null) {
+        _writeBehindFlushDelay = Long.parseLong(_properties.getProperty(SolrTools.WRITE_BEHIND_FLUSH_DELAY));
+      }
+      if (_properties.getProperty(SolrTools.HEDGED_READS) != null) {
+        _hedgedReads = Boolean.parseBoolean(_properties.getProperty(SolrTools.HEDGED_READS));
+      }
+      if (_properties.getProperty(SolrTools.HEDGE_DELAY) != null) {
+        _hedgeDelay = Long.parseLong(_properties.getProperty(SolrTools.HEDGE_DELAY));
+      }
+      if (_properties.getProperty(SolrTools.HEDGE_BUDGET) != null) {
+        _hedgeBudget = Integer.parseInt(_properties.getProperty(SolrTools.HEDGE_BUDGET));
+      }
+      if (_hedgedReads) {
+        _hedgePolicy = new SolrHedgePolicy(_hedgeDelay, _hedgeBudget);
+      }
+      if (_properties.getProperty(SolrTools.BLOOM_FILTER) != null) {
+        _useBloomFilter = Boolean.parseBoolean(_properties.getProperty(SolrTools.BLOOM_FILTER));
+      }
+      if (_properties.getProperty(SolrTools.BLOOM_FILTER_EXPECTED_KEYS) != null) {
+        _bloomFilterExpectedKeys = Long.parseLong(_properties.getProperty(SolrTools.BLOOM_FILTER_EXPECTED_KEYS));
+      }
+      if (_properties.getProperty(SolrTools.BLOOM_FILTER_FPP) != null) {
+        _bloomFilterFpp = Double.parseDouble(_properties.getProperty(SolrTools.BLOOM_FILTER_FPP));
+      }
+      if (_properties.getProperty(SolrTools.SKIP_UNCHANGED) != null) {
+        _skipUnchanged = Boolean.parseBoolean(_properties.getProperty(SolrTools.SKIP_UNCHANGED));
+      }
+      if (_properties.getProperty(SolrTools.DIGEST_MAX_ENTRIES) != null) {
+        _digestMaxEntries = Integer.parseInt(_properties.getProperty(SolrTools.DIGEST_MAX_ENTRIES));
+      }
+      if (_properties.getProperty(SolrTools.EXPIRY_SWEEP_INTERVAL) != null) {
+        _expirySweepInterval = Long.parseLong(_properties.getProperty(SolrTools.EXPIRY_SWEEP_INTERVAL));
+      }
+      if (_properties.getProperty(SolrTools.EXPIRY_EVICT_MAX_KEYS) != null) {
+        _expiryEvictMaxKeys = Integer.parseInt(_properties.getProperty(SolrTools.EXPIRY_EVICT_MAX_KEYS));
+      }
+      if (_properties.getProperty(SolrTools.PER_ENTRY_TTL) != null && Boolean.parseBoolean(_properties.getProperty(SolrTools.PER_ENTRY_TTL))) {
+        //Hazelcastڵstore()֮putʱָTTL,store()ʱò,ֻMapTTL
+        _logger.log(Level.WARNING, SolrTools.PER_ENTRY_TTL + " is not supported, map ttl is used:" + _mapName);
+      }
+      if (_properties.getProperty(SolrTools.VALUE_CODEC) != null) {
+        _valueCodecName = _properties.getProperty(SolrTools.VALUE_CODEC);
+      }
+      if (_properties.getProperty(SolrTools.ID_FORMAT) != null) {
+        _idFormat = _properties.getProperty(SolrTools.ID_FORMAT);
+      }
+      SolrHttpTransport.getInstance().configure(_properties);
+      SolrAsyncClient.getInstance().configure(_properties);
+      _breaker.configure(_properties);
 
-      _stateArray = SolrTools.getClusterState(_solrServerUrls, _coreName, _connectTimeout, _readTimeout);
-      if (_stateArray == null) {
-        throw new RuntimeException("can not connect Solr Cloud:" + "coreName:" + _coreName + ",URLS:" + _solrServerUrls);
-      } else {
-        _logger.log(Level.INFO, "Solr Cloud Status:" + _stateArray.encodePrettily());
-      }
-
-      this._urlGets = new java.util.ArrayList<String>(_stateArray.size());
-      this._urlUpdates = new java.util.ArrayList<String>(_stateArray.size());
-      this._urlSelects = new java.util.ArrayList<String>(_stateArray.size());
-      for (int i = 0; i < _stateArray.size(); i++) {
-        JsonObject jNode = _stateArray.<JsonObject> get(i);
-        if (jNode.getString("state").equalsIgnoreCase("active") || jNode.getString("state").equalsIgnoreCase("recovering")) {
-          this._urlGets.add(jNode.getString("base_url") + "/" + _coreName + "/get?id=");
-          this._urlUpdates.add(jNode.getString("base_url") + "/" + _coreName + "/update");
-          this._urlSelects.add(jNode.getString("base_url") + "/" + _coreName + "/select");
-        }
+      if (_properties.getProperty(SolrTools.TOPOLOGY_REFRESH_INTERVAL) != null) {
+        _topologyRefreshInterval = Long.parseLong(_properties.getProperty(SolrTools.TOPOLOGY_REFRESH_INTERVAL));
       }
+      _topology = SolrTopology.acquire(_solrServerUrls, _coreName, _connectTimeout, _readTimeout, _topologyRefreshInterval);
+      _commitPolicy = new SolrCommitPolicy(_mapName, _properties);
     } catch (Exception ex) {
-      this._urlGets = null;
-      this._urlUpdates = null;
-      this._urlSelects = null;
       _logger.log(Level.WARNING, ex.getMessage(), ex);
     }
   }
@@ -110,165 +220,278 @@ public class MapSolrStore<K, V> implements MapLoaderLifecycleSupport, MapStore<K
   @Override
   public void init(HazelcastInstance hazelcastInstance, Properties properties, String mapName) {
     _hazelcastInstance = hazelcastInstance;
+    try {
+      _valueCodec = SolrValueCodec.newCodec(_valueCodecName, _hazelcastInstance);
+      _idCodec = new SolrIdCodec(_mapName, _idFormat);
+    } catch (Exception e) {
+      _logger.log(Level.SEVERE, e.getMessage(), e);
+      throw new RuntimeException(e);
+    }
     try {
       solrCommit();
     } catch (Exception ex) {
       _logger.log(Level.WARNING, ex.getMessage(), ex);
     }
 
-    int syncinterval = 30;
-    _scheduleSync.scheduleWithFixedDelay(this, 10, syncinterval, TimeUnit.SECONDS);
-    _logger.log(Level.INFO, this.getClass().getCanonicalName() + ":" + _mapName + ":init()!");
-  }
+    if (_idCodec.isCompact()) {
+      try {
+        //Ѿlegacyʽĵʱlegacyʽ,load()µidҲԭĵ
+        JsonObject solrResponse = solrSelect("id:" + _mapName + "\\:\\{*", 0, 0, null, SolrTools.F_ID, null);
+        if (solrResponse.getObject("response").getInteger("numFound") > 0) {
+          _logger.log(Level.WARNING, SolrTools.ID_FORMAT + "=" + SolrIdCodec.COMPACT + " is ignored, map has legacy ids:" + _mapName);
+          _idCodec = new SolrIdCodec(_mapName, SolrIdCodec.LEGACY);
+        }
+      } catch (Exception ex) {
+        _logger.log(Level.WARNING, ex.getMessage(), ex);
+      }
+    }
 
-  @Override
-  public void destroy() {
-    _scheduleSync.shutdown();
-    _logger.log(Level.INFO, this.getClass().getCanonicalName() + ":" + _mapName + ":destroy()!");
-  }
+    _commitPolicy.start(new SolrCommitPolicy.Committer() {
+      @Override
+      public void commit() throws Exception {
+        solrCommit();
+      }
+    });
 
-  public boolean isDeleteOnEvict() {
-    return _deleteOnEvict;
-  }
+    if (_writeBehind && _writeBehindBuffer == null) {
+      _writeBehindBuffer = new SolrWriteBehindBuffer<K, V>(_mapName, new SolrWriteBehindBuffer.Flusher<K, V>() {
+        @Override
+        public void storeAll(Map<K, V> map, Map<K, Long> expirationTimes) throws Exception {
+          solrStoreAll(map, expirationTimes);
+        }
 
-  public String getSolrGetUrl() {
-    if (_urlGets.size() == 1) {
-      return _urlGets.get(0);
+        @Override
+        public void deleteAll(Collection<K> keys) throws Exception {
+          solrDeleteAll(keys);
+        }
+      }, _writeBehindMaxEntries, _writeBehindFlushSize, _writeBehindFlushDelay);
     }
 
-    _lockGet.lock();
-    try {
-      _indexGet++;
-      if (_indexGet >= _urlGets.size()) {
-        _indexGet = 0;
-      }
-
-      return _urlGets.get(_indexGet);
-    } finally {
-      _lockGet.unlock();
+    if (_useBloomFilter && _bloomFilter == null) {
+      _bloomFilter = new SolrBloomFilter(_mapName, _bloomFilterExpectedKeys, _bloomFilterFpp, new SolrBloomFilter.Loader() {
+        @Override
+        public void loadIds(final SolrBloomFilter filter) throws Exception {
+          solrCommit(); //ɨֻܿύ˵ĵ,commitPolicy=noneʱдܻûύ
+          solrScanIds("id:" + _mapName + "\\:*", new SolrJsonReader.DocHandler() {
+            @Override
+            public void onDoc(JsonObject doc) throws Exception {
+              filter.put(doc.getString(SolrTools.F_ID));
+            }
+          });
+        }
+      });
+      _bloomFilter.rebuild(); //ں̨ɨ,֮ǰloadճSolr
     }
-  }
 
-  public String getSolrUpdateUrl() {
-    if (_urlUpdates.size() == 1) {
-      return _urlUpdates.get(0);
+    if (_hazelcastInstance != null && _hazelcastInstance.getConfig().getMapConfig(_mapName).getTimeToLiveSeconds() > 0) {
+      _timeToLive = _hazelcastInstance.getConfig().getMapConfig(_mapName).getTimeToLiveSeconds() * 1000L;
+    } else if (_mapName.startsWith(MEMCACHED_PREFIX)) {
+      _timeToLive = DAY_30;
     }
 
-    _lockPost.lock();
-    try {
-      _indexPost++;
-      if (_indexPost >= _urlUpdates.size()) {
-        _indexPost = 0;
-      }
+    if (hasExpiry() && _expirySweeper == null) {
+      _expirySweeper = new SolrExpirySweeper(_mapName, _expirySweepInterval, _expiryEvictMaxKeys, new SolrExpirySweeper.Purger() {
+        @Override
+        public void purgeExpired(long now) throws Exception {
+          if (_hazelcastInstance != null && !_hazelcastInstance.getCluster().getMembers().iterator().next().localMember()) {
+            return; //ֻϵĽڵ,ڵ㷢ͬdelete-by-queryû
+          }
+          solrDeleteExpired(now);
+        }
 
-      return _urlUpdates.get(_indexPost);
-    } finally {
-      _lockPost.unlock();
+        @Override
+        public void evictExpired(Object key) throws Exception {
+          Member owner = _hazelcastInstance.getPartitionService().getPartition(key).getOwner();
+          if (owner != null && !owner.localMember()) { //partitionѾǨ,µowner¼ʱԼ
+            return;
+          }
+          _hazelcastInstance.getMap(_mapName).evict(key);
+        }
+      });
+      _expirySweeper.start();
     }
-  }
 
-  public String getSolrSelectUrl() {
-    if (_urlSelects.size() == 1) {
-      return _urlSelects.get(0);
+    if (_skipUnchanged && _digests == null) {
+      if (hasExpiry()) { //ʱдʱ,ظдҪˢHZ_E_l
+        _logger.log(Level.WARNING, SolrTools.SKIP_UNCHANGED + " is ignored for map with ttl:" + _mapName);
+      } else if (_hazelcastInstance != null) {
+        _digests = new SolrDigestCache(_hazelcastInstance.getPartitionService().getPartitions().size(), _digestMaxEntries);
+      } else {
+        _digests = new SolrDigestCache(1, _digestMaxEntries);
+      }
     }
 
-    _lockSelect.lock();
-    try {
-      _indexSelect++;
-      if (_indexSelect >= _urlSelects.size()) {
-        _indexSelect = 0;
-      }
+    if (_hazelcastInstance != null && (_digests != null || _bloomFilter != null) && _migrationListenerId == null) {
+      //partitionǨԺĽڵдЩkey:partitionժҪ,ǨڵʱBloomؽ֮ǰ
+      _migrationListenerId = _hazelcastInstance.getPartitionService().addMigrationListener(new MigrationListener() {
+        @Override
+        public void migrationStarted(MigrationEvent migrationEvent) {
+          if (_digests != null) {
+            _digests.clear(migrationEvent.getPartitionId());
+          }
+        }
 
-      return _urlSelects.get(_indexSelect);
-    } finally {
-      _lockSelect.unlock();
+        @Override
+        public void migrationCompleted(MigrationEvent migrationEvent) {
+          if (_digests != null) {
+            _digests.clear(migrationEvent.getPartitionId());
+          }
+          if (_bloomFilter != null && migrationEvent.getNewOwner() != null && migrationEvent.getNewOwner().localMember()) {
+            //ԭownerдٵһflushDelayһβʱ
+            _bloomFilter.invalidate(_writeBehind ? _writeBehindFlushDelay + _operationTimeout : 0);
+          }
+        }
+
+        @Override
+        public void migrationFailed(MigrationEvent migrationEvent) {
+          if (_digests != null) {
+            _digests.clear(migrationEvent.getPartitionId());
+          }
+        }
+      });
     }
+
+    _logger.log(Level.INFO, this.getClass().getCanonicalName() + ":" + _mapName + ":init()!");
   }
 
+  /**
+   * Hazelcast 3.2Mapdestroyʱ,HazelcastServerAppÿԱϵ;ڵرʱҲٵһ,ִֻһ
+   */
   @Override
-  //ˢSolrȺ״̬Scheduled
-  public void run() {
-    JsonArray stateArray = SolrTools.getClusterState(_solrServerUrls, _coreName, _connectTimeout, _readTimeout);
-    if (stateArray == null) {
-      _logger.log(Level.WARNING, "can not connect Solr Cloud:" + "coreName:" + _coreName + ",URLS:" + _solrServerUrls);
+  public void destroy() {
+    if (!_destroyed.compareAndSet(false, true)) {
       return;
     }
-    if (_stateArray.encode().equals(stateArray.encode())) {
-      return;
+    _stores.remove(_mapName, this);
+    if (_writeBehindBuffer != null) { //ѻʣµд
+      _writeBehindBuffer.shutdown();
     }
-    _stateArray = stateArray;
-
-    java.util.List<String> newUrlGets = new java.util.ArrayList<String>(stateArray.size());
-    java.util.List<String> newUrlUpdates = new java.util.ArrayList<String>(stateArray.size());
-    java.util.List<String> newUrlSelects = new java.util.ArrayList<String>(stateArray.size());
-    for (int i = 0; i < stateArray.size(); i++) {
-      JsonObject jj = stateArray.<JsonObject> get(i);
-      if (jj.getString("state").equalsIgnoreCase("active") || jj.getString("state").equalsIgnoreCase("recovering")) {
-        newUrlGets.add(jj.getString("base_url") + "/" + _coreName + "/get?id=");
-        newUrlUpdates.add(jj.getString("base_url") + "/" + _coreName + "/update");
-        newUrlSelects.add(jj.getString("base_url") + "/" + _coreName + "/select");
-      }
+    if (_bloomFilter != null) {
+      _bloomFilter.close();
     }
-
-    _lockGet.lock();
-    try {
-      this._urlGets.clear();
-      this._urlGets = newUrlGets;
-    } finally {
-      _lockGet.unlock();
+    if (_commitPolicy != null) { //policysoftCommitʱѻûύдύ
+      _commitPolicy.stop();
     }
-
-    _lockPost.lock();
-    try {
-      this._urlUpdates.clear();
-      this._urlUpdates = newUrlUpdates;
-    } finally {
-      _lockPost.unlock();
+    if (_expirySweeper != null) {
+      _expirySweeper.stop();
     }
-
-    _lockSelect.lock();
-    try {
-      this._urlSelects.clear();
-      this._urlSelects = newUrlSelects;
-    } finally {
-      _lockSelect.unlock();
+    if (_migrationListenerId != null) {
+      _hazelcastInstance.getPartitionService().removeMigrationListener(_migrationListenerId);
+      _migrationListenerId = null;
+    }
+    if (_digests != null) {
+      _logger.log(Level.INFO, "skipped unchanged writes:" + _mapName + ":" + _skippedWrites.get());
     }
+    if (_topology != null) {
+      _topology.release();
+      _topology = null;
+    }
+    _logger.log(Level.INFO, this.getClass().getCanonicalName() + ":" + _mapName + ":destroy()!");
   }
 
-  private String buildSolrId(K key) {
-    JsonObject jsonKey = new JsonObject();
-    if (key instanceof String) {
-      jsonKey.putString("C", "S");
-      jsonKey.putString("V", (String) key);
-    } else {
-      jsonKey.putString("C", key.getClass().getName());
-      jsonKey.putString("V", JsonObject.toJson(key));
-    }
-    String id = _mapName + ":" + jsonKey.encode();
+  public boolean isDeleteOnEvict() {
+    return _deleteOnEvict;
+  }
 
-    return id;
+  public String getSolrGetUrl() {
+    SolrReplicaSelector.Endpoint endpoint = _topology.getGetSelector().select();
+    return endpoint == null ? null : endpoint.getUrl();
+  }
+
+  public String getSolrUpdateUrl() {
+    return _topology.nextUpdateUrl();
+  }
+
+  public String getSolrSelectUrl() {
+    SolrReplicaSelector.Endpoint endpoint = _topology.getSelectSelector().select();
+    return endpoint == null ? null : endpoint.getUrl();
+  }
+
+  private String buildSolrId(K key) {
+    return _idCodec.encode(key);
   }
 
   private void solrDelete(K key) throws Exception {
 
     JsonObject doc = new JsonObject();
-    doc.putObject("delete", (new JsonObject()).putString(SolrTools.F_ID, buildSolrId(key)));
+    String id = buildSolrId(key);
+    doc.putObject("delete", (new JsonObject()).putString(SolrTools.F_ID, id));
+
+    forgetDigest(key, id);
+    solrDeleteDoc(routeUpdate(id), doc);
+    if (_bloomFilter != null) {
+      _bloomFilter.onDelete(1);
+    }
+  }
+
+  /**
+   * Ȱidshard,ٰbatchSizeÿзֳɿ,ÿֻһidбdeleteshardleader.
+   */
+  private void solrDeleteAll(Collection<K> keys) throws Exception {
+    SolrAsyncClient.Batch<Object> batch = SolrAsyncClient.getInstance().newBatch();
 
+    Map<String, JsonArray> chunks = new HashMap<String, JsonArray>();
+    for (K key : keys) {
+      String id = buildSolrId(key);
+      forgetDigest(key, id);
+      String leaderUrl = routeUpdate(id);
+      String route = leaderUrl == null ? "" : leaderUrl;
+      JsonArray chunk = chunks.get(route);
+      if (chunk == null) {
+        chunk = new JsonArray();
+        chunks.put(route, chunk);
+      }
+      chunk.addString(id);
+      if (chunk.size() >= _batchSize) {
+        batch.submit(deleteChunkTask(leaderUrl, chunk));
+        chunks.remove(route);
+      }
+    }
+    for (Entry<String, JsonArray> entry : chunks.entrySet()) {
+      batch.submit(deleteChunkTask(entry.getKey().length() == 0 ? null : entry.getKey(), entry.getValue()));
+    }
+    batch.await();
+    if (_bloomFilter != null) {
+      _bloomFilter.onDelete(keys.size());
+    }
+  }
+
+  private Callable<Object> deleteChunkTask(final String leaderUrl, final JsonArray chunk) {
+    return new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        solrDeleteDoc(leaderUrl, (new JsonObject()).putArray("delete", chunk));
+        return null;
+      }
+    };
+  }
+
+  /**
+   * @param leaderUrl
+   *          - һȷURL(shardleader),Ϊnullʧʱ
+   */
+  private void solrDeleteDoc(String leaderUrl, JsonObject doc) throws Exception {
     JsonObject jsonResponse = null;
     Exception ex = null;
-    for (int i = 0; i < _urlUpdates.size(); i++) {
+    SolrCircuitBreaker.Deadline deadline = _breaker.newDeadline(_operationTimeout);
+    for (int i = 0; i < _topology.getUpdateUrlCount() && !deadline.isExpired(); i++) {
+      String url = (i == 0 && leaderUrl != null && _breaker.isCallable(leaderUrl)) ? leaderUrl : getSolrUpdateUrl();
+      if (!_breaker.allowRequest(url)) {
+        ex = new IOException("circuit open:" + url);
+        continue;
+      }
       try {
-        jsonResponse = SolrTools.delDoc(getSolrUpdateUrl(), _connectTimeout, _readTimeout, doc);
+        jsonResponse = SolrTools.delDoc(_commitPolicy.updateUrl(url), deadline.timeout(_connectTimeout), deadline.timeout(_readTimeout), doc);
+        _breaker.onSuccess(url);
         if (SolrTools.getStatus(jsonResponse) == 0) {
+          _commitPolicy.onUpdate();
           ex = null;
           break;
         }
       } catch (Exception e) {
+        _breaker.onFailure(url, e);
         ex = e;
-        try {
-          Thread.sleep(100);
-        } catch (InterruptedException e1) {
-        }
+        deadline.backoff(i);
       }
     }
     if (ex != null) {
@@ -280,95 +503,697 @@ public class MapSolrStore<K, V> implements MapLoaderLifecycleSupport, MapStore<K
     }
   }
 
+  /**
+   * ڵ㻹ûдSolrwriteBehind,ԼժҪBloom.
+   * MapdestroyʱÿԱҪ,ĳԱľݻdelete-by-query֮дSolr
+   */
+  public void clearLocal() {
+    try {
+      if (_writeBehindBuffer != null) { //ڽеflush
+        _writeBehindBuffer.clear();
+      }
+      if (_bloomFilter != null) {
+        _bloomFilter.clear();
+      }
+      if (_digests != null) {
+        _digests.clear();
+      }
+    } catch (Exception e) {
+      _logger.log(Level.SEVERE, e.getMessage(), e);
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * һdelete-by-queryɾMapSolrȫĵ,MapdestroyʱϵĳԱ.
+   */
+  public void deleteAllPersisted() {
+    try {
+      clearLocal();
+      JsonObject doc = new JsonObject();
+      doc.putObject("delete", (new JsonObject()).putString("query", "id:" + _mapName + "\\:*"));
+      solrDeleteDoc(null, doc);
+      _logger.log(Level.INFO, "deleteAllPersisted():" + _mapName);
+    } catch (Exception e) {
+      _logger.log(Level.SEVERE, e.getMessage(), e);
+      throw new RuntimeException(e);
+    }
+  }
+
   private V solrGet(K key) throws Exception {
     String id = buildSolrId(key);
 
+    JsonObject doc;
+    if (_hedgePolicy != null && _topology.getGetSelector().size() > 1) {
+      doc = solrHedgedGetDoc(id);
+    } else {
+      doc = solrGetDoc(id);
+    }
+    if (doc == null) {
+      return null;
+    }
+
+    if (isExpired(doc)) { //ɺ̨,ͬɾ
+      onExpired();
+      return null;
+    }
+
+    onLoaded(key, doc);
+    return decodeValue(doc);
+  }
+
+  private JsonObject solrGetDoc(String id) throws Exception {
     JsonObject doc = null;
     Exception ex = null;
-    for (int i = 0; i < _urlGets.size(); i++) {
+    SolrCircuitBreaker.Deadline deadline = _breaker.newDeadline(_operationTimeout);
+    for (int i = 0; i < _topology.getGetSelector().size() && !deadline.isExpired(); i++) {
+      SolrReplicaSelector.Endpoint endpoint = _topology.getGetSelector().select();
+      if (!_breaker.allowRequest(endpoint.getUrl())) {
+        ex = new IOException("circuit open:" + endpoint.getUrl());
+        continue;
+      }
+      long start = endpoint.begin();
       try {
-        doc = SolrTools.getDoc(getSolrGetUrl(), _connectTimeout, _readTimeout, id);
+        doc = SolrTools.getDoc(endpoint.getUrl(), deadline.timeout(_connectTimeout), deadline.timeout(_readTimeout), id);
+        endpoint.success(start);
         ex = null;
         break;
       } catch (Exception e) {
+        endpoint.failure(start, e);
         ex = e;
-        try {
-          Thread.sleep(100);
-        } catch (InterruptedException e1) {
-        }
+        deadline.backoff(i);
       }
     }
     if (ex != null) {
       throw ex;
     }
-    if (doc == null) {
-      return null;
+
+    return doc;
+  }
+
+  /**
+   * Գ:һrealtime get,hedgeDelayûз,Ԥʱһٷһ,
+   * ȳɹصĽ,ȡһ.ʧʱ˻صͨ.
+   */
+  private JsonObject solrHedgedGetDoc(String id) throws Exception {
+    SolrReplicaSelector.Endpoint primary = _topology.getGetSelector().select();
+    if (primary == null || !_breaker.allowRequest(primary.getUrl())) {
+      return solrGetDoc(id);
     }
 
-    if (_mapName.startsWith(MEMCACHED_PREFIX)) { //жmemcacheǷ
+    _hedgePolicy.onRequest();
+    CompletionService<JsonObject> completion = SolrAsyncClient.getInstance().newHedgeCompletionService();
+    List<Future<JsonObject>> futures = new ArrayList<Future<JsonObject>>(2);
+    try {
+      futures.add(completion.submit(getDocTask(primary, id)));
+    } catch (RejectedExecutionException e) { //Գ̶߳,Գ,ֱڵ߳
+      try {
+        return getDocTask(primary, id).call();
+      } catch (Exception ex) {
+        return solrGetDoc(id);
+      }
+    }
+    try {
+      Future<JsonObject> done = completion.poll(_hedgePolicy.getHedgeDelay(), TimeUnit.MILLISECONDS);
+      if (done == null) {
+        SolrReplicaSelector.Endpoint hedge = _topology.getGetSelector().select(primary);
+        //ֻ۶״̬ĸԳ,öԳȥhalf-open̽
+        if (hedge != null && _breaker.isClosed(hedge.getUrl()) && _hedgePolicy.tryHedge() && _breaker.allowRequest(hedge.getUrl())) {
+          try {
+            futures.add(completion.submit(getDocTask(hedge, id)));
+          } catch (RejectedExecutionException e) { //Գ̶߳,ֻȵһ
+            _breaker.onCancel(hedge.getUrl());
+          }
+        }
+        done = completion.take();
+      }
+
+      for (int i = 0; i < futures.size(); i++) {
+        try {
+          JsonObject doc = done.get();
+          if (done != futures.get(0)) {
+            _hedgePolicy.onHedgeWin();
+          }
+          return doc;
+        } catch (ExecutionException e) {
+          if (i + 1 < futures.size()) {
+            done = completion.take();
+          }
+        }
+      }
+    } finally {
+      for (Future<JsonObject> future : futures) {
+        future.cancel(true);
+      }
+    }
+
+    return solrGetDoc(id);
+  }
+
+  private Callable<JsonObject> getDocTask(final SolrReplicaSelector.Endpoint endpoint, final String id) {
+    return new Callable<JsonObject>() {
+      @Override
+      public JsonObject call() throws Exception {
+        long start = endpoint.begin();
+        try {
+          JsonObject doc = SolrTools.getDoc(endpoint.getUrl(), _connectTimeout, _readTimeout, id);
+          endpoint.success(start);
+          _hedgePolicy.record(System.nanoTime() - start);
+          return doc;
+        } catch (Exception e) {
+          if (Thread.interrupted()) { //ȡ,ʧ
+            endpoint.cancel();
+          } else {
+            endpoint.failure(start, e);
+          }
+          throw e;
+        }
+      }
+    };
+  }
+
+  private boolean isExpired(JsonObject doc) throws Exception {
+    Number expire = doc.getNumber(SolrTools.F_HZ_EXPIRE);
+    if (expire != null) {
+      return expire.longValue() <= System.currentTimeMillis();
+    }
+
+    if (_mapName.startsWith(MEMCACHED_PREFIX)) { //ûHZ_E_lĵ,ʱжmemcacheǷ
       Date birthday = SolrTools.solrDateFormat.parse(doc.getString(SolrTools.F_HZ_CTIME));
-      if ((System.currentTimeMillis() - birthday.getTime()) >= DAY_30) { //30
-        solrDelete(key);
-        return null;
+      if ((System.currentTimeMillis() - birthday.getTime()) >= DAY_30) { //30
+        return true;
       }
     }
 
-    String sClass = doc.getString(SolrTools.F_HZ_CLASS);
-    String sValue = doc.getString(SolrTools.F_HZ_DATA);
-    return (V) JsonObject.fromJson(sValue, Class.forName(sClass));
+    return false;
   }
 
-  private void solrStore(K key, V value) throws Exception {
+  /**
+   * ĵûйʱ
+   */
+  private boolean hasExpiry() {
+    return _timeToLive > 0;
+  }
+
+  /**
+   * store()/storeAll()ʱʱ,0ʾ.writeBehindʱдһŽ,flushʱټ
+   */
+  private long expirationTime() {
+    return _timeToLive > 0 ? System.currentTimeMillis() + _timeToLive : 0;
+  }
+
+  /**
+   * Solrػڴentry,HazelcastһµTTL,ԭĹʱ䵽Ժ
+   */
+  private void onLoaded(K key, JsonObject doc) {
+    Number expire = doc.getNumber(SolrTools.F_HZ_EXPIRE);
+    if (expire != null && _expirySweeper != null && _hazelcastInstance != null) {
+      _expirySweeper.evictAt(key, expire.longValue());
+    }
+  }
+
+  /**
+   * Ժдɾ˵keyٰԭĹʱ
+   */
+  private void onWritten(Object key) {
+    if (_expirySweeper != null) {
+      _expirySweeper.forget(key);
+    }
+  }
+
+  /**
+   * ˹ڵĵ,ų́
+   */
+  private void onExpired() {
+    if (_expirySweeper != null) {
+      _expirySweeper.requestSweep();
+    }
+  }
+
+  /**
+   * һdelete-by-queryɾMapnow֮ǰڵĵ,memcacheMapûHZ_E_lĵ
+   */
+  private void solrDeleteExpired(long now) throws Exception {
+    String query = "id:" + _mapName + "\\:* AND " + SolrTools.F_HZ_EXPIRE + ":[* TO " + now + "]";
+    if (_mapName.startsWith(MEMCACHED_PREFIX)) {
+      query = "id:" + _mapName + "\\:* AND (" + SolrTools.F_HZ_EXPIRE + ":[* TO " + now + "]"
+          + " OR (" + SolrTools.F_HZ_CTIME + ":[* TO NOW-30DAYS] AND -" + SolrTools.F_HZ_EXPIRE + ":[* TO *]))";
+    }
+    JsonObject doc = new JsonObject();
+    doc.putObject("delete", (new JsonObject()).putString("query", query));
+    solrDeleteDoc(null, doc);
+  }
+
+  /**
+   * ökeyʱõĹ˲ѯ,SolrȥѾڵĵ.ûйʱMapnull
+   */
+  private String expiryFilter() {
+    if (hasExpiry()) {
+      return "-" + SolrTools.F_HZ_EXPIRE + ":[* TO " + System.currentTimeMillis() + "]";
+    }
+    return null;
+  }
+
+  private V decodeValue(JsonObject doc) throws Exception {
+    return (V) _valueCodec.decode(doc);
+  }
+
+  /**
+   * loadBatchSizekeyзֳɿ,ÿֻһrealtime get.
+   */
+  private Map<K, V> solrGetAll(Collection<K> keys) throws Exception {
+    SolrAsyncClient.Batch<Map<K, V>> batch = SolrAsyncClient.getInstance().newBatch();
+
+    Map<String, K> chunk = new HashMap<String, K>(Math.min(_loadBatchSize, keys.size()));
+    for (K key : keys) {
+      chunk.put(buildSolrId(key), key);
+      if (chunk.size() >= _loadBatchSize) {
+        batch.submit(getChunkTask(chunk));
+        chunk = new HashMap<String, K>(Math.min(_loadBatchSize, keys.size()));
+      }
+    }
+    if (chunk.size() > 0) {
+      batch.submit(getChunkTask(chunk));
+    }
+
+    Map<K, V> result = new HashMap<K, V>(keys.size());
+    for (Map<K, V> part : batch.await()) {
+      result.putAll(part);
+    }
+    return result;
+  }
+
+  private Callable<Map<K, V>> getChunkTask(final Map<String, K> chunk) {
+    return new Callable<Map<K, V>>() {
+      @Override
+      public Map<K, V> call() throws Exception {
+        return solrGetChunk(chunk);
+      }
+    };
+  }
+
+  private Map<K, V> solrGetChunk(final Map<String, K> chunk) throws Exception {
+    List<String> ids = new ArrayList<String>(chunk.keySet());
+
+    final Map<K, V> result = new HashMap<K, V>(chunk.size());
+    SolrJsonReader.DocHandler handler = new SolrJsonReader.DocHandler() {
+      @Override
+      public void onDoc(JsonObject doc) throws Exception {
+        K key = chunk.get(doc.getString(SolrTools.F_ID));
+        if (key == null) {
+          return;
+        }
+
+        if (isExpired(doc)) {
+          onExpired();
+          return;
+        }
+
+        onLoaded(key, doc);
+        result.put(key, decodeValue(doc));
+      }
+    };
+
+    Exception ex = null;
+    SolrCircuitBreaker.Deadline deadline = _breaker.newDeadline(_operationTimeout);
+    for (int i = 0; i < _topology.getGetSelector().size() && !deadline.isExpired(); i++) {
+      SolrReplicaSelector.Endpoint endpoint = _topology.getGetSelector().select();
+      if (!_breaker.allowRequest(endpoint.getUrl())) {
+        ex = new IOException("circuit open:" + endpoint.getUrl());
+        continue;
+      }
+      long start = endpoint.begin();
+      try {
+        SolrTools.getDocs(endpoint.getUrl(), deadline.timeout(_connectTimeout), deadline.timeout(_readTimeout), ids, handler);
+        endpoint.success(start);
+        ex = null;
+        break;
+      } catch (Exception e) {
+        endpoint.failure(start, e);
+        ex = e;
+        deadline.backoff(i);
+      }
+    }
+    if (ex != null) {
+      throw ex;
+    }
+
+    return result;
+  }
+
+  private JsonObject buildSolrDoc(K key, V value, long expire) throws Exception {
     JsonObject doc = new JsonObject();
     doc.putString(SolrTools.F_ID, buildSolrId(key));
     doc.putNumber(SolrTools.F_VERSION, 0); // =0 Dont care (normal overwrite if exists)
-    doc.putString(SolrTools.F_HZ_CTIME, SolrTools.solrDateFormat.format(new java.util.Date(System.currentTimeMillis())));
+    long now = System.currentTimeMillis();
+    doc.putString(SolrTools.F_HZ_CTIME, SolrTools.solrDateFormat.format(new java.util.Date(now)));
+    if (expire > 0) {
+      doc.putNumber(SolrTools.F_HZ_EXPIRE, expire);
+    }
+
+    if (_hazelcastInstance != null) { //partition id,ڵʱloadAllKeyspartition
+      doc.putNumber(SolrTools.F_HZ_PARTITION, _hazelcastInstance.getPartitionService().getPartition(key).getPartitionId());
+    }
+
+    _valueCodec.encode(value, doc);
+
+    return doc;
+  }
+
+  private void solrStore(K key, V value) throws Exception {
+    int bloomWrite = beginBloomWrite(Collections.singleton(key));
+    try {
+      JsonObject doc = buildSolrDoc(key, value, expirationTime());
+      if (isUnchanged(doc)) {
+        return;
+      }
+      solrUpdate(routeUpdate(doc.getString(SolrTools.F_ID)), SolrJsonWriter.bodyWriter(new JsonArray().addObject(doc)));
+      onStored(doc);
+    } finally {
+      endBloomWrite(bloomWrite);
+    }
+  }
+
+  /**
+   * дSolr֮ǰǼд,idӽBloom,дԺloadһܲ鵽.д(۳ɹʧ)endBloomWrite().
+   * дSolrʱż,writeBehindkeyloadȲ黺
+   */
+  private int beginBloomWrite(Collection<K> keys) {
+    if (_bloomFilter == null) {
+      return 0;
+    }
+    int epoch = _bloomFilter.beginWrite();
+    try {
+      for (K key : keys) {
+        _bloomFilter.put(buildSolrId(key));
+      }
+    } catch (RuntimeException e) {
+      _bloomFilter.endWrite(epoch);
+      throw e;
+    }
+    return epoch;
+  }
+
+  private void endBloomWrite(int epoch) {
+    if (_bloomFilter != null) {
+      _bloomFilter.endWrite(epoch);
+    }
+  }
+
+  /**
+   * ĵ(ֵ)һдSolrһʱtrue.
+   * ɾɵժҪ:дʧʱSolrݲȷ,þɵժҪ
+   */
+  private boolean isUnchanged(JsonObject doc) {
+    if (_digests == null) {
+      return false;
+    }
+    long idHash = SolrDigestCache.hash64(doc.getString(SolrTools.F_ID), 0);
+    if (_digests.contains(digestSegment(doc), idHash, contentDigest(doc))) {
+      _skippedWrites.incrementAndGet();
+      return true;
+    }
+    _digests.remove(digestSegment(doc), idHash);
+    return false;
+  }
+
+  /**
+   * ĵдSolrԺݵժҪ
+   */
+  private void onStored(JsonObject doc) {
+    if (_digests != null) {
+      _digests.put(digestSegment(doc), SolrDigestCache.hash64(doc.getString(SolrTools.F_ID), 0), contentDigest(doc));
+    }
+  }
 
-    doc.putString(SolrTools.F_HZ_CLASS, value.getClass().getName());
-    doc.putString(SolrTools.F_HZ_DATA, JsonObject.toJson(value));
+  /**
+   * storeAllĿдSolrԺ,üӽʱõժҪժҪ
+   */
+  private void onStored(UpdateChunk<K, V> chunk) {
+    if (_digests != null) {
+      for (int i = 0; i < chunk._keys.size(); i++) {
+        _digests.put(chunk._segments[i], chunk._idHashes[i], chunk._contentDigests[i]);
+      }
+    }
+  }
+
+  /**
+   * ɾ֮ǰ
+   */
+  private void forgetDigest(K key, String id) {
+    if (_digests != null) {
+      int segment = _hazelcastInstance == null ? 0 : _hazelcastInstance.getPartitionService().getPartition(key).getPartitionId();
+      _digests.remove(segment, SolrDigestCache.hash64(id, 0));
+    }
+  }
+
+  /**
+   * ժҪpartitionֶ,ûHazelcastInstanceʱֻһ
+   */
+  private int digestSegment(JsonObject doc) {
+    Integer partition = doc.getInteger(SolrTools.F_HZ_PARTITION);
+    return partition == null ? 0 : partition.intValue();
+  }
+
+  /**
+   * ĵݵ64λժҪ,idʹʱ
+   */
+  private static long contentDigest(JsonObject doc) {
+    return SolrDigestCache.hash64(SolrValueCodec.payload(doc), SolrDigestCache.hash64(doc.getString(SolrTools.F_HZ_CLASS), 0));
+  }
 
+  /**
+   * idshardleaderupdate URL,ȷʱnull
+   */
+  private String routeUpdate(String id) {
+    SolrShardRouter router = _topology.getSnapshot().getRouter();
+    return router == null ? null : router.getLeaderUpdateUrl(id);
+  }
+
+  /**
+   * @param leaderUrl
+   *          - һȷURL(shardleader),Ϊnullʧʱ
+   */
+  private void solrUpdate(String leaderUrl, SolrHttpTransport.BodyWriter docs) throws Exception {
     JsonObject jsonResponse = null;
     Exception ex = null;
-    for (int i = 0; i < _urlUpdates.size(); i++) {
+    SolrCircuitBreaker.Deadline deadline = _breaker.newDeadline(_operationTimeout);
+    for (int i = 0; i < _topology.getUpdateUrlCount() && !deadline.isExpired(); i++) {
+      String url = (i == 0 && leaderUrl != null && _breaker.isCallable(leaderUrl)) ? leaderUrl : getSolrUpdateUrl();
+      if (!_breaker.allowRequest(url)) {
+        ex = new IOException("circuit open:" + url);
+        continue;
+      }
       try {
-        jsonResponse = SolrTools.updateDoc(getSolrUpdateUrl(), _connectTimeout, _readTimeout, doc);
+        jsonResponse = SolrTools.updateDocs(_commitPolicy.updateUrl(url), deadline.timeout(_connectTimeout), deadline.timeout(_readTimeout), docs);
+        _breaker.onSuccess(url);
         if (SolrTools.getStatus(jsonResponse) == 0) {
+          _commitPolicy.onUpdate();
           ex = null;
           break;
         }
       } catch (Exception e) {
+        _breaker.onFailure(url, e);
         ex = e;
-        try {
-          Thread.sleep(100);
-        } catch (InterruptedException e1) {
-        }
+        deadline.backoff(i);
       }
     }
     if (ex != null) {
       throw ex;
     }
+    if (jsonResponse == null) { //һҲûзȥ
+      throw new IOException("operation timeout:" + _operationTimeout + "ms");
+    }
 
     if (SolrTools.getStatus(jsonResponse) != 0) {
       throw new RuntimeException(jsonResponse.encodePrettily());
     }
   }
 
+  private void solrStoreAll(Map<K, V> map, Map<K, Long> expirationTimes) throws Exception {
+    int bloomWrite = beginBloomWrite(map.keySet());
+    try {
+      solrStoreChunks(map, expirationTimes);
+    } finally {
+      endBloomWrite(bloomWrite);
+    }
+  }
+
+  /**
+   * Ȱidshard,ٰbatchSizeԼMAX_BATCH_BYTESÿзֳɿ,ÿֻһupdateshardleader.
+   * SolrܾݵĿĵһ,ֻԺȻʧܵĵŻ׳쳣;ڵ㲻ɴ(IOException)Ŀʧ,.
+   * expirationTimeswriteBehindдʱõĹʱ,Ϊnullʱ(write-through).
+   */
+  private void solrStoreChunks(Map<K, V> map, Map<K, Long> expirationTimes) throws Exception {
+    long expire = expirationTime();
+    int total = map.size();
+    List<K> failedKeys = Collections.synchronizedList(new ArrayList<K>());
+    SolrAsyncClient.Batch<Exception> batch = SolrAsyncClient.getInstance().newBatch();
+
+    Map<String, UpdateChunk<K, V>> chunks = new HashMap<String, UpdateChunk<K, V>>();
+    int chunkCount = 0;
+    for (Entry<K, V> entry : map.entrySet()) {
+      Long expirationTime = expirationTimes == null ? null : expirationTimes.get(entry.getKey());
+      long docExpire = expirationTime == null ? expire : expirationTime.longValue();
+      JsonObject doc = buildSolrDoc(entry.getKey(), entry.getValue(), docExpire);
+      if (isUnchanged(doc)) {
+        continue;
+      }
+      String leaderUrl = routeUpdate(doc.getString(SolrTools.F_ID));
+      String route = leaderUrl == null ? "" : leaderUrl;
+      UpdateChunk<K, V> chunk = chunks.get(route);
+      if (chunk == null) {
+        chunk = new UpdateChunk<K, V>(leaderUrl, Math.min(_batchSize, map.size()));
+        chunks.put(route, chunk);
+      }
+      chunk.add(entry.getKey(), entry.getValue(), docExpire, doc);
+
+      if (chunk._keys.size() >= _batchSize || chunk._bytes >= SolrTools.MAX_BATCH_BYTES) {
+        batch.submit(storeChunkTask(chunkCount, chunk, failedKeys));
+        chunkCount++;
+        chunks.remove(route);
+      }
+    }
+    for (UpdateChunk<K, V> chunk : chunks.values()) {
+      batch.submit(storeChunkTask(chunkCount, chunk, failedKeys));
+      chunkCount++;
+    }
+
+    Exception lastEx = null;
+    for (Exception e : batch.await()) {
+      if (e != null) {
+        lastEx = e;
+      }
+    }
+
+    if (failedKeys.size() > 0) {
+      try { //ѾɹĴmapɾ,ֻʧܵĽHazelcast
+        map.keySet().retainAll(new HashSet<K>(failedKeys));
+      } catch (UnsupportedOperationException e) {
+      }
+      throw new RuntimeException("storeAll():" + _mapName + ":failed:" + failedKeys.size() + "/" + total, lastEx);
+    }
+  }
+
+  /**
+   * storeAllʱͬһshardһĵ.
+   * ֻkey,value,ʱժҪ,õĵڼӽʱͶ,дʱ±,
+   * ͬʱڷ͵пռõڴ治ĵС
+   */
+  private static class UpdateChunk<K, V> {
+    final String _leaderUrl;
+    final List<K> _keys;
+    final List<V> _values;
+    final long[] _expires;
+    final int[] _segments;
+    final long[] _idHashes;
+    final long[] _contentDigests;
+    int _bytes = 0;
+
+    UpdateChunk(String leaderUrl, int capacity) {
+      _leaderUrl = leaderUrl;
+      _keys = new ArrayList<K>(capacity);
+      _values = new ArrayList<V>(capacity);
+      _expires = new long[capacity];
+      _segments = new int[capacity];
+      _idHashes = new long[capacity];
+      _contentDigests = new long[capacity];
+    }
+
+    void add(K key, V value, long expire, JsonObject doc) {
+      int i = _keys.size();
+      _keys.add(key);
+      _values.add(value);
+      _expires[i] = expire;
+      Integer partition = doc.getInteger(SolrTools.F_HZ_PARTITION);
+      _segments[i] = partition == null ? 0 : partition.intValue();
+      _idHashes[i] = SolrDigestCache.hash64(doc.getString(SolrTools.F_ID), 0);
+      _contentDigests[i] = contentDigest(doc);
+      _bytes = _bytes + SolrValueCodec.payload(doc).length() + doc.getString(SolrTools.F_ID).length();
+    }
+  }
+
+  /**
+   * дʱѿkey/valueĵ,ʧЧʱٱһ
+   */
+  private SolrHttpTransport.BodyWriter chunkBody(final UpdateChunk<K, V> chunk) {
+    return SolrJsonWriter.arrayWriter(new SolrJsonWriter.ElementSource() {
+      @Override
+      public int size() {
+        return chunk._keys.size();
+      }
+
+      @Override
+      public Object get(int index) throws IOException {
+        try {
+          return buildSolrDoc(chunk._keys.get(index), chunk._values.get(index), chunk._expires[index]);
+        } catch (IOException e) {
+          throw e;
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+    });
+  }
+
+  private Callable<Exception> storeChunkTask(final int chunkIndex, final UpdateChunk<K, V> chunk, final List<K> failedKeys) {
+    return new Callable<Exception>() {
+      @Override
+      public Exception call() throws Exception {
+        return storeChunk(chunkIndex, chunk, failedKeys);
+      }
+    };
+  }
+
+  private Exception storeChunk(int chunkIndex, UpdateChunk<K, V> chunk, List<K> failedKeys) {
+    try {
+      solrUpdate(chunk._leaderUrl, chunkBody(chunk));
+      onStored(chunk);
+      return null;
+    } catch (IOException e) { //ڵ㲻ɴѾ۶,ֻͬĳʱٵȺܶ,ֱʧ
+      _logger.log(Level.WARNING, "storeAll():" + _mapName + ":chunk:" + chunkIndex + ":size:" + chunk._keys.size() + " failed:" + e.getMessage(), e);
+      failedKeys.addAll(chunk._keys);
+      return e;
+    } catch (Exception e) { //Solrܾ,ĵ,ҳܾĵ
+      _logger.log(Level.WARNING, "storeAll():" + _mapName + ":chunk:" + chunkIndex + ":size:" + chunk._keys.size() + " failed, retry one by one:" + e.getMessage(), e);
+    }
+
+    Exception lastEx = null;
+    for (int i = 0; i < chunk._keys.size(); i++) {
+      try {
+        solrStore(chunk._keys.get(i), chunk._values.get(i));
+      } catch (IOException e) { //ԵĹнڵ㲻ɴ,ʣµĵ
+        failedKeys.addAll(chunk._keys.subList(i, chunk._keys.size()));
+        return e;
+      } catch (Exception e) {
+        failedKeys.add(chunk._keys.get(i));
+        lastEx = e;
+      }
+    }
+    return lastEx;
+  }
+
   private void solrCommit() throws Exception {
     JsonObject jsonResponse = null;
     Exception ex = null;
-    for (int i = 0; i < _urlUpdates.size(); i++) {
+    SolrCircuitBreaker.Deadline deadline = _breaker.newDeadline(_operationTimeout);
+    for (int i = 0; i < _topology.getUpdateUrlCount() && !deadline.isExpired(); i++) {
+      String url = getSolrUpdateUrl();
+      if (!_breaker.allowRequest(url)) {
+        ex = new IOException("circuit open:" + url);
+        continue;
+      }
       try {
-        jsonResponse = SolrTools.solrCommit(getSolrUpdateUrl(), _connectTimeout, _readTimeout);
+        jsonResponse = SolrTools.solrCommit(url, deadline.timeout(_connectTimeout), deadline.timeout(_readTimeout));
+        _breaker.onSuccess(url);
         if (SolrTools.getStatus(jsonResponse) == 0) {
           ex = null;
           break;
         }
       } catch (Exception e) {
+        _breaker.onFailure(url, e);
         ex = e;
-        try {
-          Thread.sleep(100);
-        } catch (InterruptedException e1) {
-        }
+        deadline.backoff(i);
       }
     }
     if (ex != null) {
@@ -380,20 +1205,26 @@ public class MapSolrStore<K, V> implements MapLoaderLifecycleSupport, MapStore<K
     }
   }
 
-  private JsonObject solrSelect(int startIndex, String cursorMark) throws Exception {
+  private JsonObject solrSelect(String query, int startIndex, int pageSize, String cursorMark, String fl, SolrJsonReader.DocHandler handler) throws Exception {
     JsonObject solrResponse = null;
     Exception ex = null;
-    for (int i = 0; i < _urlSelects.size(); i++) {
+    SolrCircuitBreaker.Deadline deadline = _breaker.newDeadline(_operationTimeout);
+    for (int i = 0; i < _topology.getSelectSelector().size() && !deadline.isExpired(); i++) {
+      SolrReplicaSelector.Endpoint endpoint = _topology.getSelectSelector().select();
+      if (!_breaker.allowRequest(endpoint.getUrl())) {
+        ex = new IOException("circuit open:" + endpoint.getUrl());
+        continue;
+      }
+      long start = endpoint.begin();
       try {
-        solrResponse = SolrTools.selectDocs(getSolrSelectUrl(), _connectTimeout, _readTimeout, "id:" + _mapName + "\\:*", startIndex, SolrTools.PAGE_SIZE, cursorMark);
+        solrResponse = SolrTools.selectDocs(endpoint.getUrl(), deadline.timeout(_connectTimeout), deadline.timeout(_readTimeout), query, expiryFilter(), startIndex, pageSize, cursorMark, fl, handler);
+        endpoint.success(start);
         ex = null;
         break;
       } catch (Exception e) {
+        endpoint.failure(start, e);
         ex = e;
-        try {
-          Thread.sleep(100);
-        } catch (InterruptedException e1) {
-        }
+        deadline.backoff(i);
       }
     }
     if (ex != null) {
@@ -402,10 +1233,60 @@ public class MapSolrStore<K, V> implements MapLoaderLifecycleSupport, MapStore<K
 
     return solrResponse;
   }
+  private JsonObject solrExport(String query, String fl, SolrJsonReader.DocHandler handler) throws Exception {
+    JsonObject solrResponse = null;
+    Exception ex = null;
+    SolrCircuitBreaker.Deadline deadline = _breaker.newDeadline(_operationTimeout);
+    for (int i = 0; i < _topology.getSelectSelector().size() && !deadline.isExpired(); i++) {
+      SolrReplicaSelector.Endpoint endpoint = _topology.getSelectSelector().select();
+      if (!_breaker.allowRequest(endpoint.getUrl())) {
+        ex = new IOException("circuit open:" + endpoint.getUrl());
+        continue;
+      }
+      long start = endpoint.begin();
+      try {
+        String urlSelect = endpoint.getUrl();
+        String urlExport = urlSelect.substring(0, urlSelect.lastIndexOf('/')) + "/export";
+        solrResponse = SolrTools.exportDocs(urlExport, deadline.timeout(_connectTimeout), deadline.timeout(_readTimeout), query, expiryFilter(), fl, handler);
+        endpoint.success(start);
+        ex = null;
+        break;
+      } catch (Exception e) {
+        endpoint.failure(start, e);
+        ex = e;
+        deadline.backoff(i);
+      }
+    }
+    if (ex != null) {
+      throw ex;
+    }
+
+    if (SolrTools.getStatus(solrResponse) != 0) {
+      throw new RuntimeException(solrResponse.encodePrettily());
+    }
+    return solrResponse;
+  }
+
 
   @Override
   public V load(K key) {
     try {
+      if (_writeBehindBuffer != null) { //ûдSolrԻΪ׼
+        SolrWriteBehindBuffer.Pending<V> pending = _writeBehindBuffer.get(key);
+        if (pending != null) {
+          return pending.isDeleted() ? null : pending.getValue();
+        }
+      }
+      if (_bloomFilter != null) {
+        if (!_bloomFilter.mightContain(buildSolrId(key))) { //һSolr,÷
+          return null;
+        }
+        V value = solrGet(key);
+        if (value == null) {
+          _bloomFilter.onFalsePositives(1);
+        }
+        return value;
+      }
       return solrGet(key);
     } catch (Exception e) {
       _logger.log(Level.SEVERE, e.getMessage(), e);
@@ -416,6 +1297,11 @@ public class MapSolrStore<K, V> implements MapLoaderLifecycleSupport, MapStore<K
   @Override
   public void delete(K key) {
     try {
+      onWritten(key);
+      if (_writeBehindBuffer != null) {
+        _writeBehindBuffer.delete(key);
+        return;
+      }
       solrDelete(key);
     } catch (Exception e) {
       _logger.log(Level.SEVERE, e.getMessage(), e);
@@ -425,14 +1311,29 @@ public class MapSolrStore<K, V> implements MapLoaderLifecycleSupport, MapStore<K
 
   @Override
   public void deleteAll(Collection<K> keys) {
-    for (K key : keys) {
-      this.delete(key);
+    try {
+      for (K key : keys) {
+        onWritten(key);
+      }
+      if (_writeBehindBuffer != null) {
+        _writeBehindBuffer.deleteAll(keys);
+        return;
+      }
+      solrDeleteAll(keys);
+    } catch (Exception e) {
+      _logger.log(Level.SEVERE, e.getMessage(), e);
+      throw new RuntimeException(e);
     }
   }
 
   @Override
   public void store(K key, V value) {
     try {
+      onWritten(key);
+      if (_writeBehindBuffer != null) {
+        _writeBehindBuffer.store(key, value, expirationTime());
+        return;
+      }
       solrStore(key, value);
     } catch (Exception e) {
       _logger.log(Level.SEVERE, e.getMessage(), e);
@@ -442,20 +1343,64 @@ public class MapSolrStore<K, V> implements MapLoaderLifecycleSupport, MapStore<K
 
   @Override
   public void storeAll(Map<K, V> map) {
-    for (Entry<K, V> entrys : map.entrySet()) {
-      this.store(entrys.getKey(), entrys.getValue());
+    try {
+      for (K key : map.keySet()) {
+        onWritten(key);
+      }
+      if (_writeBehindBuffer != null) {
+        _writeBehindBuffer.storeAll(map, expirationTime());
+        return;
+      }
+      solrStoreAll(map, null);
+    } catch (Exception e) {
+      _logger.log(Level.SEVERE, e.getMessage(), e);
+      throw new RuntimeException(e);
     }
   }
 
   @Override
   public Map<K, V> loadAll(Collection<K> keys) {
-    Map<K, V> result = new HashMap<K, V>();
+    try {
+      if (_writeBehindBuffer != null) { //ûдSolrԻΪ׼
+        Map<K, V> result = new HashMap<K, V>(keys.size());
+        List<K> missed = new ArrayList<K>(keys.size());
+        for (K key : keys) {
+          SolrWriteBehindBuffer.Pending<V> pending = _writeBehindBuffer.get(key);
+          if (pending == null) {
+            missed.add(key);
+          } else if (!pending.isDeleted()) {
+            result.put(key, pending.getValue());
+          }
+        }
+        result.putAll(bloomFilterGetAll(missed));
+        return result;
+      }
+      return bloomFilterGetAll(keys);
+    } catch (Exception e) {
+      _logger.log(Level.SEVERE, e.getMessage(), e);
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * ȥBloomжһSolrkeyԺȡ
+   */
+  private Map<K, V> bloomFilterGetAll(Collection<K> keys) throws Exception {
+    if (_bloomFilter == null) {
+      return solrGetAll(keys);
+    }
+
+    List<K> maybeKeys = new ArrayList<K>(keys.size());
     for (K key : keys) {
-      V value = load(key);
-      if (value != null) {
-        result.put(key, value);
+      if (_bloomFilter.mightContain(buildSolrId(key))) {
+        maybeKeys.add(key);
       }
     }
+    if (maybeKeys.size() == 0) {
+      return new HashMap<K, V>();
+    }
+    Map<K, V> result = solrGetAll(maybeKeys);
+    _bloomFilter.onFalsePositives(maybeKeys.size() - result.size());
     return result;
   }
 
@@ -465,60 +1410,27 @@ public class MapSolrStore<K, V> implements MapLoaderLifecycleSupport, MapStore<K
       return null;
     }
 
-    if (_hazelcastInstance.getCluster().getMembers().size() > 1) {
-      return null;
-    }
-
     Set<K> set = new HashSet<K>();
+    Set<K> expiredKeys = new HashSet<K>();
+    String query = "id:" + _mapName + "\\:*";
+    AtomicInteger remaining = _maxInitialKeys > 0 ? new AtomicInteger(_maxInitialKeys) : null;
     try {
-      boolean stop = false;
-      int startIndex = 0;
-      int prfexPos = (_mapName + ":").length();
-      JsonObject solrResponse = null;
-      while (!stop) {
-        if (startIndex == 0) {
-          solrResponse = solrSelect(startIndex, "*");
-        } else {
-          solrResponse = solrSelect(startIndex, solrResponse.getString("nextCursorMark"));
-        }
-        JsonArray docs = solrResponse.getObject("response").getArray("docs");
-        if (docs.size() == 0) {
-          break;
-        }
-
-        JsonObject doc;
-        K key;
-        for (int i = 0; i < docs.size(); i++) {
-          doc = docs.get(i);
-          JsonObject jsonKey = new JsonObject(doc.getString(SolrTools.F_ID).substring(prfexPos));
-          if (jsonKey.getString("C").equalsIgnoreCase("S")) {
-            key = (K) jsonKey.getString("V");
-          } else {
-            key = (K) JsonObject.fromJson(jsonKey.getString("V"), Class.forName(jsonKey.getString("C")));
-          }
-
-          if (_mapName.startsWith(MEMCACHED_PREFIX)) { //жmemcacheǷ
-            Date birthday = SolrTools.solrDateFormat.parse(doc.getString(SolrTools.F_HZ_CTIME));
-            if ((System.currentTimeMillis() - birthday.getTime()) >= DAY_30) { //30
-              solrDelete(key);
-              continue;
-            }
-          }
-
-          set.add(key);
-        }
-        _logger.log(Level.INFO, "loadAllKeys():" + _mapName + ":size:" + set.size() + ":startIndex:" + startIndex);
-
-        startIndex = startIndex + docs.size();
-        int numFound = solrResponse.getObject("response").getInteger("numFound");
-        if (startIndex >= numFound) {
-          break;
-        }
+      if (_hazelcastInstance.getCluster().getMembers().size() > 1) {
+        solrLoadOwnedKeys(query, remaining, set, expiredKeys);
+      } else {
+        solrLoadKeys(query, false, remaining, set, expiredKeys);
+      }
+      if (remaining != null && remaining.get() <= 0) {
+        _logger.log(Level.WARNING, "loadAllKeys():" + _mapName + ":reached maxInitialKeys:" + _maxInitialKeys + ", the rest are loaded on first access");
       }
+      if (expiredKeys.size() > 0) { //ϵĵûHZ_E_l,Solr˹
+        onExpired();
+      }
+
       if (set.size() == 0) {
         return null;
       } else {
-        _logger.log(Level.INFO, "Final loadAllKeys():" + _mapName + ":size:" + set.size() + ":startIndex:" + startIndex);
+        _logger.log(Level.INFO, "Final loadAllKeys():" + _mapName + ":size:" + set.size());
         return set;
       }
     } catch (Exception e) {
@@ -527,4 +1439,170 @@ public class MapSolrStore<K, V> implements MapLoaderLifecycleSupport, MapStore<K
     }
   }
 
+  /**
+   * ڵʱÿڵֻԼӵеpartitionkey,partition鲢вѯ.
+   * ûpartitionֶεݵһ,ڿͻ˰keypartitionٹ.
+   */
+  private void solrLoadOwnedKeys(String query, AtomicInteger remaining, Set<K> set, Set<K> expiredKeys) throws Exception {
+    SolrAsyncClient.Batch<LoadedKeys<K>> batch = SolrAsyncClient.getInstance().newBatch();
+    for (String partitionQuery : ownedPartitionQueries(query)) {
+      batch.submit(loadKeysTask(partitionQuery, false, remaining));
+    }
+    batch.submit(loadKeysTask(query + " AND -" + SolrTools.F_HZ_PARTITION + ":[* TO *]", true, remaining));
+
+    for (LoadedKeys<K> part : batch.await()) {
+      set.addAll(part._keys);
+      expiredKeys.addAll(part._expiredKeys);
+    }
+  }
+
+  /**
+   * ѱڵӵеpartitionPARTITION_GROUP_SIZEһƴɲѯ
+   */
+  private List<String> ownedPartitionQueries(String query) {
+    List<Integer> owned = new ArrayList<Integer>();
+    for (Partition partition : _hazelcastInstance.getPartitionService().getPartitions()) {
+      Member owner = partition.getOwner();
+      if (owner != null && owner.localMember()) {
+        owned.add(partition.getPartitionId());
+      }
+    }
+    _logger.log(Level.INFO, "loadAllKeys():" + _mapName + ":owned partitions:" + owned.size());
+
+    List<String> queries = new ArrayList<String>();
+    StringBuilder group = new StringBuilder();
+    int groupSize = 0;
+    for (int i = 0; i < owned.size(); i++) {
+      group.append(groupSize == 0 ? "" : " OR ").append(owned.get(i));
+      groupSize++;
+      if (groupSize >= SolrTools.PARTITION_GROUP_SIZE || i == owned.size() - 1) {
+        queries.add(query + " AND " + SolrTools.F_HZ_PARTITION + ":(" + group + ")");
+        group.setLength(0);
+        groupSize = 0;
+      }
+    }
+    return queries;
+  }
+
+  private boolean isOwnedKey(K key) {
+    Member owner = _hazelcastInstance.getPartitionService().getPartition(key).getOwner();
+    return owner == null || owner.localMember();
+  }
+
+  @SuppressWarnings("unchecked")
+  private K decodeKey(String id) throws Exception {
+    return (K) _idCodec.decode(id);
+  }
+
+  /**
+   * һƬɨĽ
+   */
+  private static class LoadedKeys<K> {
+    final Set<K> _keys = new HashSet<K>();
+    final Set<K> _expiredKeys = new HashSet<K>();
+  }
+
+  private Callable<LoadedKeys<K>> loadKeysTask(final String query, final boolean ownedOnly, final AtomicInteger remaining) {
+    return new Callable<LoadedKeys<K>>() {
+      @Override
+      public LoadedKeys<K> call() throws Exception {
+        LoadedKeys<K> loaded = new LoadedKeys<K>();
+        solrLoadKeys(query, ownedOnly, remaining, loaded._keys, loaded._expiredKeys);
+        return loaded;
+      }
+    };
+  }
+
+  /**
+   * queryƥkeyʽset,ڵkeyŵexpiredKeys.
+   * ֻȡidʹʱ,ȡHZ_V_s;ĵǱ߶߽,ҳӦڴ.ʱͬһҳĵܻظյ,Setȥ
+   *
+   * @param ownedOnly
+   *          - Ϊtrueʱֻڵӵеpartitionkey
+   * @param remaining
+   *          - Լصkey,еɨ蹲,ԺٱµkeyҲٷҳ;Ϊnullʱ
+   */
+  private void solrLoadKeys(String query, final boolean ownedOnly, final AtomicInteger remaining, final Set<K> set, final Set<K> expiredKeys)
+      throws Exception {
+    SolrJsonReader.DocHandler handler = new SolrJsonReader.DocHandler() {
+      @Override
+      public void onDoc(JsonObject doc) throws Exception {
+        K key = decodeKey(doc.getString(SolrTools.F_ID));
+
+        if (isExpired(doc)) { //жmemcacheǷ
+          expiredKeys.add(key);
+          return;
+        }
+
+        if (ownedOnly && !isOwnedKey(key)) {
+          return;
+        }
+
+        if (remaining != null && remaining.decrementAndGet() < 0) {
+          return;
+        }
+        set.add(key);
+      }
+    };
+
+    if (_useExport) {
+      try {
+        solrExport(query, SolrTools.KEY_FIELDS, handler);
+        _logger.log(Level.INFO, "loadAllKeys():" + _mapName + ":export:size:" + set.size());
+        return;
+      } catch (Exception e) {
+        _logger.log(Level.WARNING, "loadAllKeys():" + _mapName + ":export failed, fall back to cursor paging:" + e.getMessage(), e);
+      }
+    }
+
+    int startIndex = 0;
+    String cursorMark = "*";
+    int pageSize = _keysPageSize;
+    while (true) {
+      long begin = System.currentTimeMillis();
+      JsonObject solrResponse = solrSelect(query, startIndex, pageSize, cursorMark, SolrTools.KEY_FIELDS, handler);
+      pageSize = SolrTools.adaptPageSize(pageSize, System.currentTimeMillis() - begin);
+      startIndex = set.size() + expiredKeys.size();
+      _logger.log(Level.INFO, "loadAllKeys():" + _mapName + ":size:" + set.size() + ":startIndex:" + startIndex);
+
+      int numFound = solrResponse.getObject("response").getInteger("numFound");
+      String nextCursorMark = solrResponse.getString("nextCursorMark");
+      if ((!ownedOnly && startIndex >= numFound) || nextCursorMark == null || nextCursorMark.equals(cursorMark)) {
+        break;
+      }
+      if (remaining != null && remaining.get() <= 0) {
+        break;
+      }
+      cursorMark = nextCursorMark;
+    }
+  }
+
+  /**
+   * ֻȡid,cursorҳ(useExport=trueʱ/export)queryƥȫĵid,Bloom.
+   * ڵʱҲɨȫid:partitionǨԺload䵽µĽڵ,ֻڵkeyĹ©
+   */
+  private void solrScanIds(String query, SolrJsonReader.DocHandler handler) throws Exception {
+    if (_useExport) {
+      try {
+        solrExport(query, SolrTools.F_ID, handler);
+        return;
+      } catch (Exception e) {
+        _logger.log(Level.WARNING, "solrScanIds():" + _mapName + ":export failed, fall back to cursor paging:" + e.getMessage(), e);
+      }
+    }
+
+    String cursorMark = "*";
+    int pageSize = _keysPageSize;
+    while (true) {
+      long begin = System.currentTimeMillis();
+      JsonObject solrResponse = solrSelect(query, 0, pageSize, cursorMark, SolrTools.F_ID, handler);
+      pageSize = SolrTools.adaptPageSize(pageSize, System.currentTimeMillis() - begin);
+
+      String nextCursorMark = solrResponse.getString("nextCursorMark");
+      if (nextCursorMark == null || nextCursorMark.equals(cursorMark)) {
+        break;
+      }
+      cursorMark = nextCursorMark;
+    }
+  }
 }
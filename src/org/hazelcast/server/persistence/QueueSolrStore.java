@@ -1,17 +1,17 @@
 package org.hazelcast.server.persistence;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 
 import org.wjw.efjson.JsonArray;
@@ -22,35 +22,58 @@ import com.hazelcast.logging.ILogger;
 import com.hazelcast.logging.Logger;
 
 @SuppressWarnings("unchecked")
-public class QueueSolrStore<T> implements QueueStore<T>, Runnable {
+public class QueueSolrStore<T> implements QueueStore<T> {
   private final ILogger _logger = Logger.getLogger(QueueSolrStore.class.getName());
 
   private String _solrServerUrls;
   private String _coreName = "collection1";
   private int _connectTimeout = 60 * 1000; //ӳʱ
   private int _readTimeout = 60 * 1000; //ʱ
+  private long _operationTimeout = -1; //һβԵʱ,ĬӳʱӶʱ
+  private final SolrCircuitBreaker _breaker = SolrCircuitBreaker.getInstance();
 
-  private JsonArray _stateArray;
-  private java.util.List<String> _urlGets;
-  private java.util.List<String> _urlUpdates;
-  private java.util.List<String> _urlSelects;
+  private SolrTopology _topology; //StoreõļȺ:б,shard·ɱ
+  private long _topologyRefreshInterval = SolrTopology.DEFAULT_REFRESH_INTERVAL; //鼯Ⱥ״̬ļ()
+  private SolrCommitPolicy _commitPolicy; //дSolrԺݿɼ
   private boolean _loadAll = false; //Ƿڳʼʱͼ
+  private int _batchSize = SolrTools.DEFAULT_BATCH_SIZE; //storeAllʱÿupdateĵ
+  private int _loadBatchSize = SolrTools.DEFAULT_LOAD_BATCH_SIZE; //loadAllʱÿrealtime getid
+  private int _keysPageSize = SolrTools.DEFAULT_KEYS_PAGE_SIZE; //loadAllKeysʱÿҳĳʼĵ
+  private boolean _useExport = false; //loadAllKeysʱǷ/exportһԵеkey
+  private SolrValueCodec _valueCodec = new SolrValueCodec(null); //valueı,QueueStoreòHazelcastInstance
 
   private String _queueName;
   private Properties _properties;
 
-  private Lock _lockGet = new ReentrantLock();
-  private int _indexGet = -1;
-  private Lock _lockPost = new ReentrantLock();
-  private int _indexPost = -1;
-  private Lock _lockSelect = new ReentrantLock();
-  private int _indexSelect = -1;
+  //ֵǼǵStoreʵ,MapQueuedestroyʱҵӦStore־û
+  private static final java.util.concurrent.ConcurrentMap<String, QueueSolrStore<?>> _stores = new java.util.concurrent.ConcurrentHashMap<String, QueueSolrStore<?>>();
 
-  private ScheduledExecutorService _scheduleSync = Executors.newSingleThreadScheduledExecutor(); //ˢSolrȺ״̬Scheduled
+  /**
+   * queueNameǼǵQueueSolrStore,û򷵻null
+   */
+  public static QueueSolrStore<?> getStore(String queueName) {
+    return _stores.get(queueName);
+  }
+
+  /**
+   * Queuedestroyʱ,ͷŹļȺ
+   */
+  public void destroy() {
+    _stores.remove(_queueName, this);
+    if (_commitPolicy != null) { //policysoftCommitʱѻûύдύ
+      _commitPolicy.stop();
+    }
+    if (_topology != null) {
+      _topology.release();
+      _topology = null;
+    }
+    _logger.log(Level.INFO, this.getClass().getCanonicalName() + ":" + _queueName + ":destroy()!");
+  }
 
   public QueueSolrStore(Properties properties, String queueName) {
     _properties = properties;
     _queueName = queueName;
+    _stores.put(_queueName, this);
 
     try {
       if (_properties.getProperty(SolrTools.SOLR_SERVER_URLS) == null) {
@@ -66,28 +89,37 @@ public class QueueSolrStore<T> implements QueueStore<T>, Runnable {
       if (_properties.getProperty(SolrTools.READ_TIMEOUT) != null) {
         _readTimeout = Integer.parseInt(_properties.getProperty(SolrTools.READ_TIMEOUT)) * 1000;
       }
+      if (_properties.getProperty(SolrTools.OPERATION_TIMEOUT) != null) {
+        _operationTimeout = Long.parseLong(_properties.getProperty(SolrTools.OPERATION_TIMEOUT)) * 1000;
+      }
+      if (_operationTimeout <= 0) {
+        _operationTimeout = _connectTimeout + _readTimeout;
+      }
       if (_properties.getProperty(SolrTools.LOAD_ALL) != null) {
         _loadAll = Boolean.parseBoolean(_properties.getProperty(SolrTools.LOAD_ALL));
       }
-
-      _stateArray = SolrTools.getClusterState(_solrServerUrls, _coreName, _connectTimeout, _readTimeout);
-      if (_stateArray == null) {
-        throw new RuntimeException("can not connect Solr Cloud:" + "coreName:" + _coreName + ",URLS:" + _solrServerUrls);
-      } else {
-        _logger.log(Level.INFO, "Solr Cloud Status:" + _stateArray.encodePrettily());
+      if (_properties.getProperty(SolrTools.BATCH_SIZE) != null) {
+        _batchSize = Integer.parseInt(_properties.getProperty(SolrTools.BATCH_SIZE));
+      }
+      if (_properties.getProperty(SolrTools.LOAD_BATCH_SIZE) != null) {
+        _loadBatchSize = Integer.parseInt(_properties.getProperty(SolrTools.LOAD_BATCH_SIZE));
+      }
+      if (_properties.getProperty(SolrTools.KEYS_PAGE_SIZE) != null) {
+        _keysPageSize = Integer.parseInt(_properties.getProperty(SolrTools.KEYS_PAGE_SIZE));
       }
+      if (_properties.getProperty(SolrTools.USE_EXPORT) != null) {
+        _useExport = Boolean.parseBoolean(_properties.getProperty(SolrTools.USE_EXPORT));
+      }
+      _valueCodec = SolrValueCodec.newCodec(_properties.getProperty(SolrTools.VALUE_CODEC), null);
+      SolrHttpTransport.getInstance().configure(_properties);
+      SolrAsyncClient.getInstance().configure(_properties);
+      _breaker.configure(_properties);
 
-      this._urlGets = new java.util.ArrayList<String>(_stateArray.size());
-      this._urlUpdates = new java.util.ArrayList<String>(_stateArray.size());
-      this._urlSelects = new java.util.ArrayList<String>(_stateArray.size());
-      for (int i = 0; i < _stateArray.size(); i++) {
-        JsonObject jNode = _stateArray.<JsonObject> get(i);
-        if (jNode.getString("state").equalsIgnoreCase("active") || jNode.getString("state").equalsIgnoreCase("recovering")) {
-          this._urlGets.add(jNode.getString("base_url") + "/" + _coreName + "/get?id=");
-          this._urlUpdates.add(jNode.getString("base_url") + "/" + _coreName + "/update");
-          this._urlSelects.add(jNode.getString("base_url") + "/" + _coreName + "/select");
-        }
+      if (_properties.getProperty(SolrTools.TOPOLOGY_REFRESH_INTERVAL) != null) {
+        _topologyRefreshInterval = Long.parseLong(_properties.getProperty(SolrTools.TOPOLOGY_REFRESH_INTERVAL));
       }
+      _topology = SolrTopology.acquire(_solrServerUrls, _coreName, _connectTimeout, _readTimeout, _topologyRefreshInterval);
+      _commitPolicy = new SolrCommitPolicy(_queueName, _properties);
 
       try {
         solrCommit();
@@ -95,142 +127,105 @@ public class QueueSolrStore<T> implements QueueStore<T>, Runnable {
         _logger.log(Level.WARNING, ex.getMessage(), ex);
       }
 
-      int syncinterval = 30;
-      _scheduleSync.scheduleWithFixedDelay(this, 10, syncinterval, TimeUnit.SECONDS);
+      _commitPolicy.start(new SolrCommitPolicy.Committer() {
+        @Override
+        public void commit() throws Exception {
+          solrCommit();
+        }
+      });
 
       _logger.log(Level.INFO, this.getClass().getCanonicalName() + ":" + _queueName + ":init()!");
     } catch (Exception ex) {
-      this._urlGets = null;
-      this._urlUpdates = null;
-      this._urlSelects = null;
       _logger.log(Level.WARNING, ex.getMessage(), ex);
     }
   }
 
   public String getSolrGetUrl() {
-    if (_urlGets.size() == 1) {
-      return _urlGets.get(0);
-    }
-
-    _lockGet.lock();
-    try {
-      _indexGet++;
-      if (_indexGet >= _urlGets.size()) {
-        _indexGet = 0;
-      }
-
-      return _urlGets.get(_indexGet);
-    } finally {
-      _lockGet.unlock();
-    }
+    SolrReplicaSelector.Endpoint endpoint = _topology.getGetSelector().select();
+    return endpoint == null ? null : endpoint.getUrl();
   }
 
   public String getSolrUpdateUrl() {
-    if (_urlUpdates.size() == 1) {
-      return _urlUpdates.get(0);
-    }
-
-    _lockPost.lock();
-    try {
-      _indexPost++;
-      if (_indexPost >= _urlUpdates.size()) {
-        _indexPost = 0;
-      }
-
-      return _urlUpdates.get(_indexPost);
-    } finally {
-      _lockPost.unlock();
-    }
+    return _topology.nextUpdateUrl();
   }
 
   public String getSolrSelectUrl() {
-    if (_urlSelects.size() == 1) {
-      return _urlSelects.get(0);
-    }
+    SolrReplicaSelector.Endpoint endpoint = _topology.getSelectSelector().select();
+    return endpoint == null ? null : endpoint.getUrl();
+  }
 
-    _lockSelect.lock();
-    try {
-      _indexSelect++;
-      if (_indexSelect >= _urlSelects.size()) {
-        _indexSelect = 0;
-      }
+  private void solrDelete(Long key) throws Exception {
+    String id = _queueName + ":" + key;
+    JsonObject doc = new JsonObject();
+    doc.putObject("delete", (new JsonObject()).putString(SolrTools.F_ID, id));
 
-      return _urlSelects.get(_indexSelect);
-    } finally {
-      _lockSelect.unlock();
-    }
+    solrDeleteDoc(routeUpdate(id), doc);
   }
 
-  @Override
-  //ˢSolrȺ״̬Scheduled
-  public void run() {
-    JsonArray stateArray = SolrTools.getClusterState(_solrServerUrls, _coreName, _connectTimeout, _readTimeout);
-    if (stateArray == null) {
-      _logger.log(Level.WARNING, "can not connect Solr Cloud:" + "coreName:" + _coreName + ",URLS:" + _solrServerUrls);
-      return;
-    }
-    if (_stateArray.encode().equals(stateArray.encode())) {
-      return;
-    }
-    _stateArray = stateArray;
+  /**
+   * Ȱidshard,ٰbatchSizeÿзֳɿ,ÿֻһidбdeleteshardleader.
+   */
+  private void solrDeleteAll(Collection<Long> keys) throws Exception {
+    SolrAsyncClient.Batch<Object> batch = SolrAsyncClient.getInstance().newBatch();
 
-    java.util.List<String> newUrlGets = new java.util.ArrayList<String>(stateArray.size());
-    java.util.List<String> newUrlUpdates = new java.util.ArrayList<String>(stateArray.size());
-    java.util.List<String> newUrlSelects = new java.util.ArrayList<String>(stateArray.size());
-    for (int i = 0; i < stateArray.size(); i++) {
-      JsonObject jj = stateArray.<JsonObject> get(i);
-      if (jj.getString("state").equalsIgnoreCase("active") || jj.getString("state").equalsIgnoreCase("recovering")) {
-        newUrlGets.add(jj.getString("base_url") + "/" + _coreName + "/get?id=");
-        newUrlUpdates.add(jj.getString("base_url") + "/" + _coreName + "/update");
-        newUrlSelects.add(jj.getString("base_url") + "/" + _coreName + "/select");
+    Map<String, JsonArray> chunks = new HashMap<String, JsonArray>();
+    for (Long key : keys) {
+      String id = _queueName + ":" + key;
+      String leaderUrl = routeUpdate(id);
+      String route = leaderUrl == null ? "" : leaderUrl;
+      JsonArray chunk = chunks.get(route);
+      if (chunk == null) {
+        chunk = new JsonArray();
+        chunks.put(route, chunk);
+      }
+      chunk.addString(id);
+      if (chunk.size() >= _batchSize) {
+        batch.submit(deleteChunkTask(leaderUrl, chunk));
+        chunks.remove(route);
       }
     }
-
-    _lockGet.lock();
-    try {
-      this._urlGets.clear();
-      this._urlGets = newUrlGets;
-    } finally {
-      _lockGet.unlock();
-    }
-
-    _lockPost.lock();
-    try {
-      this._urlUpdates.clear();
-      this._urlUpdates = newUrlUpdates;
-    } finally {
-      _lockPost.unlock();
-    }
-
-    _lockSelect.lock();
-    try {
-      this._urlSelects.clear();
-      this._urlSelects = newUrlSelects;
-    } finally {
-      _lockSelect.unlock();
+    for (Entry<String, JsonArray> entry : chunks.entrySet()) {
+      batch.submit(deleteChunkTask(entry.getKey().length() == 0 ? null : entry.getKey(), entry.getValue()));
     }
+    batch.await();
   }
 
-  private void solrDelete(Long key) throws Exception {
-    String id = _queueName + ":" + key;
-    JsonObject doc = new JsonObject();
-    doc.putObject("delete", (new JsonObject()).putString(SolrTools.F_ID, id));
+  private Callable<Object> deleteChunkTask(final String leaderUrl, final JsonArray chunk) {
+    return new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        solrDeleteDoc(leaderUrl, (new JsonObject()).putArray("delete", chunk));
+        return null;
+      }
+    };
+  }
 
+  /**
+   * @param leaderUrl
+   *          - һȷURL(shardleader),Ϊnullʧʱ
+   */
+  private void solrDeleteDoc(String leaderUrl, JsonObject doc) throws Exception {
     JsonObject jsonResponse = null;
     Exception ex = null;
-    for (int i = 0; i < _urlUpdates.size(); i++) {
+    SolrCircuitBreaker.Deadline deadline = _breaker.newDeadline(_operationTimeout);
+    for (int i = 0; i < _topology.getUpdateUrlCount() && !deadline.isExpired(); i++) {
+      String url = (i == 0 && leaderUrl != null && _breaker.isCallable(leaderUrl)) ? leaderUrl : getSolrUpdateUrl();
+      if (!_breaker.allowRequest(url)) {
+        ex = new IOException("circuit open:" + url);
+        continue;
+      }
       try {
-        jsonResponse = SolrTools.delDoc(getSolrUpdateUrl(), _connectTimeout, _readTimeout, doc);
+        jsonResponse = SolrTools.delDoc(_commitPolicy.updateUrl(url), deadline.timeout(_connectTimeout), deadline.timeout(_readTimeout), doc);
+        _breaker.onSuccess(url);
         if (SolrTools.getStatus(jsonResponse) == 0) {
+          _commitPolicy.onUpdate();
           ex = null;
           break;
         }
       } catch (Exception e) {
+        _breaker.onFailure(url, e);
         ex = e;
-        try {
-          Thread.sleep(100);
-        } catch (InterruptedException e1) {
-        }
+        deadline.backoff(i);
       }
     }
     if (ex != null) {
@@ -242,22 +237,43 @@ public class QueueSolrStore<T> implements QueueStore<T>, Runnable {
     }
   }
 
+  /**
+   * һdelete-by-queryɾQueueSolrȫĵ,Queuedestroyʱ.
+   */
+  public void deleteAllPersisted() {
+    try {
+      JsonObject doc = new JsonObject();
+      doc.putObject("delete", (new JsonObject()).putString("query", "id:" + _queueName + "\\:*"));
+      solrDeleteDoc(null, doc);
+      _logger.log(Level.INFO, "deleteAllPersisted():" + _queueName);
+    } catch (Exception e) {
+      _logger.log(Level.SEVERE, e.getMessage(), e);
+      throw new RuntimeException(e);
+    }
+  }
+
   private T solrGet(Long key) throws Exception {
     String id = _queueName + ":" + key;
 
     JsonObject doc = null;
     Exception ex = null;
-    for (int i = 0; i < _urlGets.size(); i++) {
+    SolrCircuitBreaker.Deadline deadline = _breaker.newDeadline(_operationTimeout);
+    for (int i = 0; i < _topology.getGetSelector().size() && !deadline.isExpired(); i++) {
+      SolrReplicaSelector.Endpoint endpoint = _topology.getGetSelector().select();
+      if (!_breaker.allowRequest(endpoint.getUrl())) {
+        ex = new IOException("circuit open:" + endpoint.getUrl());
+        continue;
+      }
+      long start = endpoint.begin();
       try {
-        doc = SolrTools.getDoc(getSolrGetUrl(), _connectTimeout, _readTimeout, id);
+        doc = SolrTools.getDoc(endpoint.getUrl(), deadline.timeout(_connectTimeout), deadline.timeout(_readTimeout), id);
+        endpoint.success(start);
         ex = null;
         break;
       } catch (Exception e) {
+        endpoint.failure(start, e);
         ex = e;
-        try {
-          Thread.sleep(100);
-        } catch (InterruptedException e1) {
-        }
+        deadline.backoff(i);
       }
     }
     if (ex != null) {
@@ -267,12 +283,91 @@ public class QueueSolrStore<T> implements QueueStore<T>, Runnable {
       return null;
     }
 
-    String sClass = doc.getString(SolrTools.F_HZ_CLASS);
-    String sValue = doc.getString(SolrTools.F_HZ_DATA);
-    return (T) JsonObject.fromJson(sValue, Class.forName(sClass));
+    return decodeValue(doc);
   }
 
-  private void solrStore(Long key, T value) throws Exception {
+  private T decodeValue(JsonObject doc) throws Exception {
+    return (T) _valueCodec.decode(doc);
+  }
+
+  /**
+   * loadBatchSizekeyзֳɿ,ÿֻһrealtime get.
+   */
+  private Map<Long, T> solrGetAll(Collection<Long> keys) throws Exception {
+    SolrAsyncClient.Batch<Map<Long, T>> batch = SolrAsyncClient.getInstance().newBatch();
+
+    Map<String, Long> chunk = new HashMap<String, Long>(Math.min(_loadBatchSize, keys.size()));
+    for (Long key : keys) {
+      chunk.put(_queueName + ":" + key, key);
+      if (chunk.size() >= _loadBatchSize) {
+        batch.submit(getChunkTask(chunk));
+        chunk = new HashMap<String, Long>(Math.min(_loadBatchSize, keys.size()));
+      }
+    }
+    if (chunk.size() > 0) {
+      batch.submit(getChunkTask(chunk));
+    }
+
+    Map<Long, T> result = new HashMap<Long, T>(keys.size());
+    for (Map<Long, T> part : batch.await()) {
+      result.putAll(part);
+    }
+    return result;
+  }
+
+  private Callable<Map<Long, T>> getChunkTask(final Map<String, Long> chunk) {
+    return new Callable<Map<Long, T>>() {
+      @Override
+      public Map<Long, T> call() throws Exception {
+        return solrGetChunk(chunk);
+      }
+    };
+  }
+
+  private Map<Long, T> solrGetChunk(final Map<String, Long> chunk) throws Exception {
+    List<String> ids = new ArrayList<String>(chunk.keySet());
+
+    final Map<Long, T> result = new HashMap<Long, T>(chunk.size());
+    SolrJsonReader.DocHandler handler = new SolrJsonReader.DocHandler() {
+      @Override
+      public void onDoc(JsonObject doc) throws Exception {
+        Long key = chunk.get(doc.getString(SolrTools.F_ID));
+        if (key == null) {
+          return;
+        }
+
+        result.put(key, decodeValue(doc));
+      }
+    };
+
+    Exception ex = null;
+    SolrCircuitBreaker.Deadline deadline = _breaker.newDeadline(_operationTimeout);
+    for (int i = 0; i < _topology.getGetSelector().size() && !deadline.isExpired(); i++) {
+      SolrReplicaSelector.Endpoint endpoint = _topology.getGetSelector().select();
+      if (!_breaker.allowRequest(endpoint.getUrl())) {
+        ex = new IOException("circuit open:" + endpoint.getUrl());
+        continue;
+      }
+      long start = endpoint.begin();
+      try {
+        SolrTools.getDocs(endpoint.getUrl(), deadline.timeout(_connectTimeout), deadline.timeout(_readTimeout), ids, handler);
+        endpoint.success(start);
+        ex = null;
+        break;
+      } catch (Exception e) {
+        endpoint.failure(start, e);
+        ex = e;
+        deadline.backoff(i);
+      }
+    }
+    if (ex != null) {
+      throw ex;
+    }
+
+    return result;
+  }
+
+  private JsonObject buildSolrDoc(Long key, T value) throws Exception {
     String sKey = _queueName + ":" + key;
 
     JsonObject doc = new JsonObject();
@@ -280,51 +375,215 @@ public class QueueSolrStore<T> implements QueueStore<T>, Runnable {
     doc.putNumber(SolrTools.F_VERSION, 0); // =0 Dont care (normal overwrite if exists)
     doc.putString(SolrTools.F_HZ_CTIME, SolrTools.solrDateFormat.format(new java.util.Date(System.currentTimeMillis())));
 
-    doc.putString(SolrTools.F_HZ_CLASS, value.getClass().getName());
-    doc.putString(SolrTools.F_HZ_DATA, JsonObject.toJson(value));
+    _valueCodec.encode(value, doc);
+
+    return doc;
+  }
+
+  private void solrStore(Long key, T value) throws Exception {
+    JsonObject doc = buildSolrDoc(key, value);
+    solrUpdate(routeUpdate(doc.getString(SolrTools.F_ID)), SolrJsonWriter.bodyWriter(new JsonArray().addObject(doc)));
+  }
 
+  /**
+   * idshardleaderupdate URL,ȷʱnull
+   */
+  private String routeUpdate(String id) {
+    SolrShardRouter router = _topology.getSnapshot().getRouter();
+    return router == null ? null : router.getLeaderUpdateUrl(id);
+  }
+
+  /**
+   * @param leaderUrl
+   *          - һȷURL(shardleader),Ϊnullʧʱ
+   */
+  private void solrUpdate(String leaderUrl, SolrHttpTransport.BodyWriter docs) throws Exception {
     JsonObject jsonResponse = null;
     Exception ex = null;
-    for (int i = 0; i < _urlUpdates.size(); i++) {
+    SolrCircuitBreaker.Deadline deadline = _breaker.newDeadline(_operationTimeout);
+    for (int i = 0; i < _topology.getUpdateUrlCount() && !deadline.isExpired(); i++) {
+      String url = (i == 0 && leaderUrl != null && _breaker.isCallable(leaderUrl)) ? leaderUrl : getSolrUpdateUrl();
+      if (!_breaker.allowRequest(url)) {
+        ex = new IOException("circuit open:" + url);
+        continue;
+      }
       try {
-        jsonResponse = SolrTools.updateDoc(getSolrUpdateUrl(), _connectTimeout, _readTimeout, doc);
+        jsonResponse = SolrTools.updateDocs(_commitPolicy.updateUrl(url), deadline.timeout(_connectTimeout), deadline.timeout(_readTimeout), docs);
+        _breaker.onSuccess(url);
         if (SolrTools.getStatus(jsonResponse) == 0) {
+          _commitPolicy.onUpdate();
           ex = null;
           break;
         }
       } catch (Exception e) {
+        _breaker.onFailure(url, e);
         ex = e;
-        try {
-          Thread.sleep(100);
-        } catch (InterruptedException e1) {
-        }
+        deadline.backoff(i);
       }
     }
     if (ex != null) {
       throw ex;
     }
+    if (jsonResponse == null) { //һҲûзȥ
+      throw new IOException("operation timeout:" + _operationTimeout + "ms");
+    }
 
     if (SolrTools.getStatus(jsonResponse) != 0) {
       throw new RuntimeException(jsonResponse.encodePrettily());
     }
   }
 
+  /**
+   * Ȱidshard,ٰbatchSizeԼMAX_BATCH_BYTESÿзֳɿ,ÿֻһupdateshardleader.
+   * SolrܾݵĿĵһ,ֻԺȻʧܵĵŻ׳쳣;ڵ㲻ɴ(IOException)Ŀʧ,.
+   */
+  private void solrStoreAll(Map<Long, T> map) throws Exception {
+    int total = map.size();
+    List<Long> failedKeys = Collections.synchronizedList(new ArrayList<Long>());
+    SolrAsyncClient.Batch<Exception> batch = SolrAsyncClient.getInstance().newBatch();
+
+    Map<String, UpdateChunk<Long, T>> chunks = new HashMap<String, UpdateChunk<Long, T>>();
+    int chunkCount = 0;
+    for (Entry<Long, T> entry : map.entrySet()) {
+      JsonObject doc = buildSolrDoc(entry.getKey(), entry.getValue());
+      String leaderUrl = routeUpdate(doc.getString(SolrTools.F_ID));
+      String route = leaderUrl == null ? "" : leaderUrl;
+      UpdateChunk<Long, T> chunk = chunks.get(route);
+      if (chunk == null) {
+        chunk = new UpdateChunk<Long, T>(leaderUrl, Math.min(_batchSize, map.size()));
+        chunks.put(route, chunk);
+      }
+      chunk.add(entry.getKey(), entry.getValue(), doc);
+
+      if (chunk._keys.size() >= _batchSize || chunk._bytes >= SolrTools.MAX_BATCH_BYTES) {
+        batch.submit(storeChunkTask(chunkCount, chunk, failedKeys));
+        chunkCount++;
+        chunks.remove(route);
+      }
+    }
+    for (UpdateChunk<Long, T> chunk : chunks.values()) {
+      batch.submit(storeChunkTask(chunkCount, chunk, failedKeys));
+      chunkCount++;
+    }
+
+    Exception lastEx = null;
+    for (Exception e : batch.await()) {
+      if (e != null) {
+        lastEx = e;
+      }
+    }
+
+    if (failedKeys.size() > 0) {
+      try { //ѾɹĴmapɾ,ֻʧܵĽHazelcast
+        map.keySet().retainAll(new HashSet<Long>(failedKeys));
+      } catch (UnsupportedOperationException e) {
+      }
+      throw new RuntimeException("storeAll():" + _queueName + ":failed:" + failedKeys.size() + "/" + total, lastEx);
+    }
+  }
+
+  /**
+   * storeAllʱͬһshardһĵ.ֻkeyvalue,õĵڼӽʱͶ,дʱ±
+   */
+  private static class UpdateChunk<K, V> {
+    final String _leaderUrl;
+    final List<K> _keys;
+    final List<V> _values;
+    int _bytes = 0;
+
+    UpdateChunk(String leaderUrl, int capacity) {
+      _leaderUrl = leaderUrl;
+      _keys = new ArrayList<K>(capacity);
+      _values = new ArrayList<V>(capacity);
+    }
+
+    void add(K key, V value, JsonObject doc) {
+      _keys.add(key);
+      _values.add(value);
+      _bytes = _bytes + SolrValueCodec.payload(doc).length() + doc.getString(SolrTools.F_ID).length();
+    }
+  }
+
+  /**
+   * дʱѿkey/valueĵ,ʧЧʱٱһ
+   */
+  private SolrHttpTransport.BodyWriter chunkBody(final UpdateChunk<Long, T> chunk) {
+    return SolrJsonWriter.arrayWriter(new SolrJsonWriter.ElementSource() {
+      @Override
+      public int size() {
+        return chunk._keys.size();
+      }
+
+      @Override
+      public Object get(int index) throws IOException {
+        try {
+          return buildSolrDoc(chunk._keys.get(index), chunk._values.get(index));
+        } catch (IOException e) {
+          throw e;
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+    });
+  }
+
+  private Callable<Exception> storeChunkTask(final int chunkIndex, final UpdateChunk<Long, T> chunk, final List<Long> failedKeys) {
+    return new Callable<Exception>() {
+      @Override
+      public Exception call() throws Exception {
+        return storeChunk(chunkIndex, chunk, failedKeys);
+      }
+    };
+  }
+
+  private Exception storeChunk(int chunkIndex, UpdateChunk<Long, T> chunk, List<Long> failedKeys) {
+    try {
+      solrUpdate(chunk._leaderUrl, chunkBody(chunk));
+      return null;
+    } catch (IOException e) { //ڵ㲻ɴѾ۶,ֻͬĳʱٵȺܶ,ֱʧ
+      _logger.log(Level.WARNING, "storeAll():" + _queueName + ":chunk:" + chunkIndex + ":size:" + chunk._keys.size() + " failed:" + e.getMessage(), e);
+      failedKeys.addAll(chunk._keys);
+      return e;
+    } catch (Exception e) { //Solrܾ,ĵ,ҳܾĵ
+      _logger.log(Level.WARNING, "storeAll():" + _queueName + ":chunk:" + chunkIndex + ":size:" + chunk._keys.size() + " failed, retry one by one:" + e.getMessage(), e);
+    }
+
+    Exception lastEx = null;
+    for (int i = 0; i < chunk._keys.size(); i++) {
+      try {
+        solrStore(chunk._keys.get(i), chunk._values.get(i));
+      } catch (IOException e) { //ԵĹнڵ㲻ɴ,ʣµĵ
+        failedKeys.addAll(chunk._keys.subList(i, chunk._keys.size()));
+        return e;
+      } catch (Exception e) {
+        failedKeys.add(chunk._keys.get(i));
+        lastEx = e;
+      }
+    }
+    return lastEx;
+  }
+
   private void solrCommit() throws Exception {
     JsonObject jsonResponse = null;
     Exception ex = null;
-    for (int i = 0; i < _urlUpdates.size(); i++) {
+    SolrCircuitBreaker.Deadline deadline = _breaker.newDeadline(_operationTimeout);
+    for (int i = 0; i < _topology.getUpdateUrlCount() && !deadline.isExpired(); i++) {
+      String url = getSolrUpdateUrl();
+      if (!_breaker.allowRequest(url)) {
+        ex = new IOException("circuit open:" + url);
+        continue;
+      }
       try {
-        jsonResponse = SolrTools.solrCommit(getSolrUpdateUrl(), _connectTimeout, _readTimeout);
+        jsonResponse = SolrTools.solrCommit(url, deadline.timeout(_connectTimeout), deadline.timeout(_readTimeout));
+        _breaker.onSuccess(url);
         if (SolrTools.getStatus(jsonResponse) == 0) {
           ex = null;
           break;
         }
       } catch (Exception e) {
+        _breaker.onFailure(url, e);
         ex = e;
-        try {
-          Thread.sleep(100);
-        } catch (InterruptedException e1) {
-        }
+        deadline.backoff(i);
       }
     }
     if (ex != null) {
@@ -336,20 +595,26 @@ public class QueueSolrStore<T> implements QueueStore<T>, Runnable {
     }
   }
 
-  private JsonObject solrSelect(int startIndex, String cursorMark) throws Exception {
+  private JsonObject solrSelect(int startIndex, int pageSize, String cursorMark, String fl, SolrJsonReader.DocHandler handler) throws Exception {
     JsonObject solrResponse = null;
     Exception ex = null;
-    for (int i = 0; i < _urlSelects.size(); i++) {
+    SolrCircuitBreaker.Deadline deadline = _breaker.newDeadline(_operationTimeout);
+    for (int i = 0; i < _topology.getSelectSelector().size() && !deadline.isExpired(); i++) {
+      SolrReplicaSelector.Endpoint endpoint = _topology.getSelectSelector().select();
+      if (!_breaker.allowRequest(endpoint.getUrl())) {
+        ex = new IOException("circuit open:" + endpoint.getUrl());
+        continue;
+      }
+      long start = endpoint.begin();
       try {
-        solrResponse = SolrTools.selectDocs(getSolrSelectUrl(), _connectTimeout, _readTimeout, "id:" + _queueName + "\\:*", startIndex, SolrTools.PAGE_SIZE, cursorMark);
+        solrResponse = SolrTools.selectDocs(endpoint.getUrl(), deadline.timeout(_connectTimeout), deadline.timeout(_readTimeout), "id:" + _queueName + "\\:*", startIndex, pageSize, cursorMark, fl, handler);
+        endpoint.success(start);
         ex = null;
         break;
       } catch (Exception e) {
+        endpoint.failure(start, e);
         ex = e;
-        try {
-          Thread.sleep(100);
-        } catch (InterruptedException e1) {
-        }
+        deadline.backoff(i);
       }
     }
     if (ex != null) {
@@ -358,6 +623,40 @@ public class QueueSolrStore<T> implements QueueStore<T>, Runnable {
 
     return solrResponse;
   }
+  private JsonObject solrExport(String fl, SolrJsonReader.DocHandler handler) throws Exception {
+    JsonObject solrResponse = null;
+    Exception ex = null;
+    SolrCircuitBreaker.Deadline deadline = _breaker.newDeadline(_operationTimeout);
+    for (int i = 0; i < _topology.getSelectSelector().size() && !deadline.isExpired(); i++) {
+      SolrReplicaSelector.Endpoint endpoint = _topology.getSelectSelector().select();
+      if (!_breaker.allowRequest(endpoint.getUrl())) {
+        ex = new IOException("circuit open:" + endpoint.getUrl());
+        continue;
+      }
+      long start = endpoint.begin();
+      try {
+        String urlSelect = endpoint.getUrl();
+        String urlExport = urlSelect.substring(0, urlSelect.lastIndexOf('/')) + "/export";
+        solrResponse = SolrTools.exportDocs(urlExport, deadline.timeout(_connectTimeout), deadline.timeout(_readTimeout), "id:" + _queueName + "\\:*", fl, handler);
+        endpoint.success(start);
+        ex = null;
+        break;
+      } catch (Exception e) {
+        endpoint.failure(start, e);
+        ex = e;
+        deadline.backoff(i);
+      }
+    }
+    if (ex != null) {
+      throw ex;
+    }
+
+    if (SolrTools.getStatus(solrResponse) != 0) {
+      throw new RuntimeException(solrResponse.encodePrettily());
+    }
+    return solrResponse;
+  }
+
 
   @Override
   public T load(Long key) {
@@ -381,8 +680,11 @@ public class QueueSolrStore<T> implements QueueStore<T>, Runnable {
 
   @Override
   public void deleteAll(Collection<Long> keys) {
-    for (Long key : keys) {
-      this.delete(key);
+    try {
+      solrDeleteAll(keys);
+    } catch (Exception e) {
+      _logger.log(Level.SEVERE, e.getMessage(), e);
+      throw new RuntimeException(e);
     }
   }
 
@@ -398,21 +700,22 @@ public class QueueSolrStore<T> implements QueueStore<T>, Runnable {
 
   @Override
   public void storeAll(Map<Long, T> map) {
-    for (Entry<Long, T> entrys : map.entrySet()) {
-      this.store(entrys.getKey(), entrys.getValue());
+    try {
+      solrStoreAll(map);
+    } catch (Exception e) {
+      _logger.log(Level.SEVERE, e.getMessage(), e);
+      throw new RuntimeException(e);
     }
   }
 
   @Override
   public Map<Long, T> loadAll(Collection<Long> keys) {
-    Map<Long, T> result = new HashMap<Long, T>();
-    for (Long key : keys) {
-      T value = load(key);
-      if (value != null) {
-        result.put(key, value);
-      }
+    try {
+      return solrGetAll(keys);
+    } catch (Exception e) {
+      _logger.log(Level.SEVERE, e.getMessage(), e);
+      throw new RuntimeException(e);
     }
-    return result;
   }
 
   @Override
@@ -421,36 +724,41 @@ public class QueueSolrStore<T> implements QueueStore<T>, Runnable {
       return null;
     }
 
-    Set<Long> set = new HashSet<Long>();
-    try {
-      boolean stop = false;
-      int startIndex = 0;
-      int prfexPos = (_queueName + ":").length();
-      JsonObject solrResponse = null;
-      while (!stop) {
-        if (startIndex == 0) {
-          solrResponse = solrSelect(startIndex, "*");
-        } else {
-          solrResponse = solrSelect(startIndex, solrResponse.getString("nextCursorMark"));
-        }
-        JsonArray docs = solrResponse.getObject("response").getArray("docs");
-        if (docs.size() == 0) {
-          break;
-        }
+    final Set<Long> set = new HashSet<Long>();
+    final int prfexPos = (_queueName + ":").length();
+    SolrJsonReader.DocHandler handler = new SolrJsonReader.DocHandler() {
+      @Override
+      public void onDoc(JsonObject doc) {
+        String sKey = doc.getString(SolrTools.F_ID).substring(prfexPos);
 
-        JsonObject doc;
-        for (int i = 0; i < docs.size(); i++) {
-          doc = docs.get(i);
-          String sKey = doc.getString(SolrTools.F_ID).substring(prfexPos);
+        set.add(Long.parseLong(sKey));
+      }
+    };
 
-          set.add(Long.parseLong(sKey));
+    try {
+      //ֻȡid;ĵǱ߶߽,ҳӦڴ.ʱͬһҳĵܻظյ,Setȥ
+      if (_useExport) {
+        try {
+          solrExport(SolrTools.F_ID, handler);
+          return set;
+        } catch (Exception e) {
+          _logger.log(Level.WARNING, "loadAllKeys():" + _queueName + ":export failed, fall back to cursor paging:" + e.getMessage(), e);
         }
+      }
+
+      String cursorMark = "*";
+      int pageSize = _keysPageSize;
+      while (true) {
+        long begin = System.currentTimeMillis();
+        JsonObject solrResponse = solrSelect(0, pageSize, cursorMark, SolrTools.F_ID, handler);
+        pageSize = SolrTools.adaptPageSize(pageSize, System.currentTimeMillis() - begin);
 
-        startIndex = startIndex + docs.size();
         int numFound = solrResponse.getObject("response").getInteger("numFound");
-        if (startIndex >= numFound) {
+        String nextCursorMark = solrResponse.getString("nextCursorMark");
+        if (set.size() >= numFound || nextCursorMark == null || nextCursorMark.equals(cursorMark)) {
           break;
         }
+        cursorMark = nextCursorMark;
       }
       return set;
     } catch (Exception e) {
@@ -0,0 +1,179 @@
+package org.hazelcast.server.persistence;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Solrõػ̳߳.load/store/deleteԼloadAllKeysķƬɨͨBatchз,
+ * Storeṩ,۶,ѡ,deadlineύԶ,ֻ.
+ * Գõ̳߳,ںʱܳ.
+ */
+public class SolrAsyncClient {
+  static final int DEFAULT_ASYNC_THREADS = 8;
+  static final int BULK_QUEUE_SIZE = 64; //ĵȴг,Ժύ߳Լִ
+  static final int DEFAULT_HEDGE_THREADS = 16;
+
+  private static final SolrAsyncClient _instance = new SolrAsyncClient();
+
+  private final ThreadPoolExecutor _executor; //
+  private final ThreadPoolExecutor _hedgeExecutor; //Գ,ûеȴ,߳ʱֱӾܾ
+
+  public static SolrAsyncClient getInstance() {
+    return _instance;
+  }
+
+  private SolrAsyncClient() {
+    //н,ɵԼִ(CallerRunsPolicy),߻,öڶ
+    _executor = new ThreadPoolExecutor(DEFAULT_ASYNC_THREADS, DEFAULT_ASYNC_THREADS, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(BULK_QUEUE_SIZE), newThreadFactory("SolrAsyncClient-"), new ThreadPoolExecutor.CallerRunsPolicy());
+    _executor.allowCoreThreadTimeOut(true);
+
+    _hedgeExecutor = new ThreadPoolExecutor(0, DEFAULT_HEDGE_THREADS, 60, TimeUnit.SECONDS,
+        new SynchronousQueue<Runnable>(), newThreadFactory("SolrAsyncClient-hedge-"), new ThreadPoolExecutor.AbortPolicy());
+  }
+
+  private static ThreadFactory newThreadFactory(final String prefix) {
+    return new ThreadFactory() {
+      private final AtomicInteger _seq = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, prefix + _seq.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      }
+    };
+  }
+
+  /**
+   * Storeõ߳,ֻ󲻻С
+   */
+  public void configure(Properties properties) {
+    if (properties.getProperty(SolrTools.ASYNC_THREADS) != null) {
+      int threads = Integer.parseInt(properties.getProperty(SolrTools.ASYNC_THREADS));
+      synchronized (_executor) {
+        if (threads > _executor.getMaximumPoolSize()) {
+          _executor.setMaximumPoolSize(threads);
+          _executor.setCorePoolSize(threads);
+        }
+      }
+    }
+    if (properties.getProperty(SolrTools.HEDGE_THREADS) != null) {
+      int threads = Integer.parseInt(properties.getProperty(SolrTools.HEDGE_THREADS));
+      synchronized (_hedgeExecutor) {
+        if (threads > _hedgeExecutor.getMaximumPoolSize()) {
+          _hedgeExecutor.setMaximumPoolSize(threads);
+        }
+      }
+    }
+  }
+
+  /**
+   * ͬʱִе
+   */
+  public int getParallelism() {
+    return _executor.getMaximumPoolSize();
+  }
+
+  private <T> Future<T> submit(Callable<T> task) {
+    return _executor.submit(task);
+  }
+
+  /**
+   * ڶԳִ̳߳,ɵȺȡ.̶߳ʱsubmit()׳RejectedExecutionException,Ӧ÷Գ
+   */
+  public <T> CompletionService<T> newHedgeCompletionService() {
+    return new ExecutorCompletionService<T>(_hedgeExecutor);
+  }
+
+  /**
+   * ½һBatch,ͬʱִе̳߳صĴС
+   */
+  public <T> Batch<T> newBatch() {
+    return new Batch<T>(this, getParallelism());
+  }
+
+  /**
+   * һзȥȴȫ.ֻһʱֱڵִ߳,ʡ߳л.
+   * κһʧ,await()ȡʣµ׳һ쳣.
+   */
+  public static class Batch<T> {
+    private final SolrAsyncClient _client;
+    private final int _window;
+    private final LinkedList<Future<T>> _inflight = new LinkedList<Future<T>>();
+    private final List<T> _results = new ArrayList<T>();
+    private Callable<T> _deferred; //һȲύ,ֻһڵִ߳
+
+    Batch(SolrAsyncClient client, int window) {
+      _client = client;
+      _window = Math.max(1, window);
+    }
+
+    public void submit(Callable<T> task) throws Exception {
+      if (_deferred == null && _inflight.isEmpty()) {
+        _deferred = task;
+        return;
+      }
+      if (_deferred != null) {
+        _inflight.add(_client.submit(_deferred));
+        _deferred = null;
+      }
+      while (_inflight.size() >= _window) {
+        waitFirst();
+      }
+      _inflight.add(_client.submit(task));
+    }
+
+    public List<T> await() throws Exception {
+      if (_deferred != null) {
+        FutureTask<T> inline = new FutureTask<T>(_deferred);
+        _deferred = null;
+        inline.run();
+        _inflight.add(inline);
+      }
+      while (!_inflight.isEmpty()) {
+        waitFirst();
+      }
+      return _results;
+    }
+
+    private void waitFirst() throws Exception {
+      Future<T> future = _inflight.removeFirst();
+      try {
+        _results.add(future.get());
+      } catch (ExecutionException ex) {
+        cancelAll();
+        Throwable cause = ex.getCause();
+        if (cause instanceof Exception) {
+          throw (Exception) cause;
+        }
+        throw ex;
+      } catch (InterruptedException ex) {
+        cancelAll();
+        Thread.currentThread().interrupt();
+        throw ex;
+      }
+    }
+
+    private void cancelAll() {
+      for (Future<T> f : _inflight) {
+        f.cancel(false);
+      }
+      _inflight.clear();
+    }
+  }
+}
@@ -0,0 +1,381 @@
+package org.hazelcast.server.persistence;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.logging.Logger;
+
+/**
+ * һMapSolrĵidBloom,MapSolrStore.loadǰ:˵ûеidһSolr,ֱӷnull,÷realtime get.
+ * ں̨߳ɨMapȫid,֮ǰеloadճSolr.дSolrʱµid,д֮ǰbeginWrite()Ǽ;
+ * ؽʱȵȵǼǹдȫ,Loaderύɨ,ɨһܿؽʼǰдid.
+ * Ľڵдidڵ㲻֪,partitionǨƵڵԺinvalidate(),ؽ֮ǰеloadճSolr.
+ * Bloomɾ,deleteֻǼ,ɾid˻߹̫ʱԶؽ.
+ * ÿעһMBean,Կʡ.
+ */
+public class SolrBloomFilter implements SolrBloomFilterMBean {
+  private static final ILogger _logger = Logger.getLogger(SolrBloomFilter.class.getName());
+
+  static final long DEFAULT_EXPECTED_KEYS = 1000 * 1000L; //ȱʡԤkey
+  static final double DEFAULT_FPP = 0.01; //ȱʡĿ
+  static final long RETRY_INTERVAL = 10 * 1000L; //ʧܺԵļ()
+  static final long WRITE_DRAIN_INTERVAL = 10L; //ؽʱȴڽедɵļ()
+  static final long MAX_BITS = 1L << 36; //8GBλ,ֹô
+
+  /**
+   * ύ,֮ǰдԲѯɼ,ɨSolrMapȫĵid,SolrBloomFilter.put()ӽ
+   */
+  public interface Loader {
+    void loadIds(SolrBloomFilter filter) throws Exception;
+  }
+
+  /**
+   * λ,Բؼid
+   */
+  private static class Bits {
+    final long _capacity; //ٸkeyĴС
+    final AtomicLongArray _words;
+    final long _bitSize;
+    final int _hashes;
+    final AtomicLong _bitsSet = new AtomicLong(); //Ϊ1λ,
+    final AtomicLong _insertions = new AtomicLong();
+    final AtomicLong _deletions = new AtomicLong();
+
+    Bits(long capacity, double fpp) {
+      _capacity = capacity;
+      long bitSize = (long) (-capacity * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+      bitSize = Math.max(64, Math.min(bitSize, MAX_BITS));
+      _words = new AtomicLongArray((int) ((bitSize + 63) / 64));
+      _bitSize = _words.length() * 64L;
+      _hashes = Math.max(1, (int) Math.round((double) _bitSize / capacity * Math.log(2)));
+    }
+
+    void put(String id) {
+      long hash1 = SolrShardRouter.murmurhash3_x86_32(id, 0, id.length(), 0) & 0xFFFFFFFFL;
+      long hash2 = SolrShardRouter.murmurhash3_x86_32(id, 0, id.length(), (int) hash1) & 0xFFFFFFFFL;
+      for (int i = 0; i < _hashes; i++) {
+        long index = ((hash1 + i * hash2) & Long.MAX_VALUE) % _bitSize;
+        int word = (int) (index >>> 6);
+        long mask = 1L << (index & 63);
+        while (true) {
+          long value = _words.get(word);
+          if ((value & mask) != 0) {
+            break;
+          }
+          if (_words.compareAndSet(word, value, value | mask)) {
+            _bitsSet.incrementAndGet();
+            break;
+          }
+        }
+      }
+      _insertions.incrementAndGet();
+    }
+
+    boolean mightContain(String id) {
+      long hash1 = SolrShardRouter.murmurhash3_x86_32(id, 0, id.length(), 0) & 0xFFFFFFFFL;
+      long hash2 = SolrShardRouter.murmurhash3_x86_32(id, 0, id.length(), (int) hash1) & 0xFFFFFFFFL;
+      for (int i = 0; i < _hashes; i++) {
+        long index = ((hash1 + i * hash2) & Long.MAX_VALUE) % _bitSize;
+        if ((_words.get((int) (index >>> 6)) & (1L << (index & 63))) == 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    double estimatedFpp() {
+      return Math.pow((double) _bitsSet.get() / _bitSize, _hashes);
+    }
+  }
+
+  private final String _mapName;
+  private final long _expectedKeys;
+  private final double _fpp;
+  private final Loader _loader;
+
+  private volatile Bits _bits; //жϵĹ,һι֮ǰΪnull
+  private volatile Bits _building; //ڹĹ,ڼstoreidҲҪӽȥ
+  private final AtomicBoolean _rebuilding = new AtomicBoolean(false);
+  private volatile boolean _closed = false;
+  private volatile Thread _rebuildThread; //ؽĺ̨߳,close()ʱж
+
+  private final AtomicLong _invalidations = new AtomicLong(); //invalidate()Ĵ
+  private volatile long _validInvalidations = 0; //_bitsڵڼinvalidate()֮ʼ,_invalidationsʱ_bits
+  private volatile long _settleUntil = 0; //invalidate()Ժٵȵʱٿʼɨ
+
+  private final AtomicInteger[] _writers = { new AtomicInteger(), new AtomicInteger() }; //_writeEpochżڽед
+  private volatile int _writeEpoch = 0;
+
+  private final AtomicLong _negatives = new AtomicLong(); //жϲ,ʡ
+  private final AtomicLong _falsePositives = new AtomicLong(); //жϿܴ,Solrȴû
+
+  private ObjectName _objectName;
+
+  public SolrBloomFilter(String mapName, long expectedKeys, double fpp, Loader loader) {
+    _mapName = mapName;
+    _expectedKeys = Math.max(1, expectedKeys);
+    _fpp = Math.max(1e-9, Math.min(0.5, fpp));
+    _loader = loader;
+
+    try {
+      MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName("org.hazelcast.server.persistence:type=SolrBloomFilter,name=" + ObjectName.quote(mapName));
+      if (!mbs.isRegistered(name)) {
+        mbs.registerMBean(this, name);
+        _objectName = name;
+      }
+    } catch (Exception ex) {
+      _logger.log(Level.WARNING, ex.getMessage(), ex);
+    }
+  }
+
+  /**
+   * idSolrʱһtrue;falseʱidһSolr.ûʱǷtrue
+   */
+  public boolean mightContain(String id) {
+    Bits bits = _bits;
+    if (bits == null || _validInvalidations != _invalidations.get() || bits.mightContain(id)) {
+      return true;
+    }
+    _negatives.incrementAndGet();
+    return false;
+  }
+
+  /**
+   * mightContain()trueid,countSolrȴû
+   */
+  public void onFalsePositives(int count) {
+    if (isReady() && count > 0) {
+      _falsePositives.addAndGet(count);
+    }
+  }
+
+  /**
+   * дSolr֮ǰ,Ǽһڽед,д(۳ɹʧ)Ժ÷ֵendWrite().
+   * ؽɨ֮ǰʼǰǼǵд
+   */
+  public int beginWrite() {
+    while (true) {
+      int epoch = _writeEpoch;
+      _writers[epoch & 1].incrementAndGet();
+      if (epoch == _writeEpoch) {
+        return epoch;
+      }
+      _writers[epoch & 1].decrementAndGet(); //ؽջepoch,Ǽǵµepoch
+    }
+  }
+
+  public void endWrite(int epoch) {
+    _writers[epoch & 1].decrementAndGet();
+  }
+
+  /**
+   * beginWrite()дSolr֮,֤дԺloadһܲ鵽
+   */
+  public void put(String id) {
+    Bits building = _building; //ȶ_building:ʱȻ_bits_building,©id
+    Bits bits = _bits;
+    if (building != null) {
+      building.put(id);
+    }
+    if (bits != null) {
+      bits.put(id);
+      if ((bits._insertions.get() & 1023) == 0 && bits.estimatedFpp() > _fpp * 2) { //̫,ĴСؽ
+        rebuild();
+      }
+    }
+  }
+
+  /**
+   * Solrɾcountid.Bloomɾ,ɾidһʱؽ
+   */
+  public void onDelete(int count) {
+    Bits bits = _bits;
+    if (bits != null && bits._deletions.addAndGet(count) > bits._capacity / 2) {
+      rebuild();
+    }
+  }
+
+  /**
+   * Ľڵдڵ㲻֪id(partitionǨƵ˱ڵ),ؽ֮ǰmightContain()Ƿtrue.
+   *
+   * @param settleTime
+   *          - ٵôʱ()ٿʼɨ,ԭownerѻдд
+   */
+  public void invalidate(long settleTime) {
+    _settleUntil = Math.max(_settleUntil, System.currentTimeMillis() + settleTime);
+    _invalidations.incrementAndGet();
+    rebuild(); //ؽʱ,ؽ߳̽ʱ_invalidations˻ɨһ
+  }
+
+  /**
+   * MapSolrȫɾ,һյĹ
+   */
+  public void clear() {
+    Bits bits = _bits;
+    _bits = new Bits(bits == null ? _expectedKeys : bits._capacity, _fpp);
+  }
+
+  public void close() {
+    _closed = true;
+    Thread t = _rebuildThread;
+    if (t != null) {
+      t.interrupt();
+    }
+    if (_objectName != null) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(_objectName);
+      } catch (Exception ex) {
+        _logger.log(Level.WARNING, ex.getMessage(), ex);
+      }
+      _objectName = null;
+    }
+  }
+
+  /**
+   * ں̨߳ɨSolr,Ѿڹʱʲô
+   */
+  @Override
+  public void rebuild() {
+    if (_closed || !_rebuilding.compareAndSet(false, true)) {
+      return;
+    }
+
+    Bits current = _bits;
+    long capacity = _expectedKeys;
+    if (current != null) {
+      capacity = Math.max(capacity, current.estimatedFpp() > _fpp * 2 ? current._capacity * 2 : current._capacity);
+    }
+    final long newCapacity = capacity;
+    Thread t = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          while (!_closed) {
+            long invalidations = _invalidations.get();
+            long settle = _settleUntil - System.currentTimeMillis();
+            if (settle > 0) {
+              Thread.sleep(settle);
+              continue; //ȴڼinvalidate()
+            }
+            Bits bits = new Bits(newCapacity, _fpp);
+            try {
+              long begin = System.currentTimeMillis();
+              _building = bits; //￪ʼputidӽµĹ
+              awaitWriters();
+              _loader.loadIds(SolrBloomFilter.this);
+              if (_closed) {
+                return;
+              }
+              _bits = bits;
+              _validInvalidations = invalidations;
+              _logger.log(Level.INFO, "bloom filter built:" + _mapName + ":keys:" + bits._insertions.get() + ":bits:" + bits._bitSize + ":hashes:" + bits._hashes + ":ms:" + (System.currentTimeMillis() - begin));
+              return;
+            } catch (Exception e) {
+              if (_closed) { //close()жɨ
+                return;
+              }
+              _logger.log(Level.WARNING, "bloom filter build failed:" + _mapName + ":" + e.getMessage(), e);
+              _building = null;
+              Thread.sleep(RETRY_INTERVAL);
+            }
+          }
+        } catch (InterruptedException e) {
+          //˳
+        } finally {
+          _building = null;
+          _rebuildThread = null;
+          _rebuilding.set(false);
+          if (!_closed && _validInvalidations != _invalidations.get()) { //ɨڼinvalidate(),rebuild(),ɨһ
+            rebuild();
+          }
+        }
+      }
+    }, "SolrBloomFilter-" + _mapName);
+    t.setDaemon(true);
+    _rebuildThread = t;
+    t.start();
+  }
+
+  @Override
+  public String getMapName() {
+    return _mapName;
+  }
+
+  /**
+   * һµepoch,ھɵepochǼǵдȫ.֮ʼдputidһӽ_building
+   */
+  private void awaitWriters() throws InterruptedException {
+    int epoch = _writeEpoch;
+    _writeEpoch = epoch + 1;
+    while (_writers[epoch & 1].get() > 0) {
+      Thread.sleep(WRITE_DRAIN_INTERVAL);
+    }
+  }
+
+  @Override
+  public boolean isReady() {
+    return _bits != null && _validInvalidations == _invalidations.get();
+  }
+
+  @Override
+  public long getExpectedKeys() {
+    Bits bits = _bits;
+    return bits == null ? _expectedKeys : bits._capacity;
+  }
+
+  @Override
+  public long getInsertions() {
+    Bits bits = _bits;
+    return bits == null ? 0 : bits._insertions.get();
+  }
+
+  @Override
+  public long getBitSize() {
+    Bits bits = _bits;
+    return bits == null ? 0 : bits._bitSize;
+  }
+
+  @Override
+  public int getHashFunctions() {
+    Bits bits = _bits;
+    return bits == null ? 0 : bits._hashes;
+  }
+
+  @Override
+  public long getNegatives() {
+    return _negatives.get();
+  }
+
+  @Override
+  public long getFalsePositives() {
+    return _falsePositives.get();
+  }
+
+  /**
+   * ѯĲڵid,ûбסı
+   */
+  @Override
+  public double getObservedFalsePositiveRate() {
+    long falsePositives = _falsePositives.get();
+    long total = falsePositives + _negatives.get();
+    return total == 0 ? 0 : (double) falsePositives / total;
+  }
+
+  /**
+   * λΪ1λ
+   */
+  @Override
+  public double getEstimatedFalsePositiveRate() {
+    Bits bits = _bits;
+    return bits == null ? 1 : bits.estimatedFpp();
+  }
+}
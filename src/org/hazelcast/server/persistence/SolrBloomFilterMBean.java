@@ -0,0 +1,28 @@
+package org.hazelcast.server.persistence;
+
+/**
+ * SolrBloomFilterJMXӿ,۲ʡ
+ */
+public interface SolrBloomFilterMBean {
+  String getMapName();
+
+  boolean isReady();
+
+  long getExpectedKeys();
+
+  long getInsertions();
+
+  long getBitSize();
+
+  int getHashFunctions();
+
+  long getNegatives();
+
+  long getFalsePositives();
+
+  double getObservedFalsePositiveRate();
+
+  double getEstimatedFalsePositiveRate();
+
+  void rebuild();
+}
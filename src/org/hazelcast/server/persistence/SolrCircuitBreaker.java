@@ -0,0 +1,274 @@
+package org.hazelcast.server.persistence;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.logging.Logger;
+
+/**
+ * ÿSolrڵ(scheme://host:port)һ۶,Store.
+ * ʧcircuitFailureThresholdκ۶,۶ڼֱʧ,ٵӳʱ;
+ * ۶ʱֻһ̽ȥ(half-open),ɹͻָ,ʧܾͰ۶ʱӱ.
+ * һSolrڵ崻,ÿ۶ϴֻһγʱĴ.
+ */
+public class SolrCircuitBreaker {
+  private static final ILogger _logger = Logger.getLogger(SolrCircuitBreaker.class.getName());
+
+  static final int DEFAULT_FAILURE_THRESHOLD = 3; //ʧܶٴ۶
+  static final long DEFAULT_OPEN_TIME = 5 * 1000L; //һ۶ϵʱ()
+  static final long MAX_OPEN_TIME = 60 * 1000L; //۶ʱӱ
+  static final long DEFAULT_RETRY_BACKOFF = 100L; //˱ܵĳʼʱ()
+  static final long MAX_RETRY_BACKOFF = 2 * 1000L; //˱ܵ
+
+  private static final int CLOSED = 0;
+  private static final int OPEN = 1;
+  private static final int HALF_OPEN = 2;
+
+  private static final SolrCircuitBreaker _instance = new SolrCircuitBreaker();
+
+  private static final ThreadLocal<Random> _random = new ThreadLocal<Random>() {
+    @Override
+    protected Random initialValue() {
+      return new Random();
+    }
+  };
+
+  private final ConcurrentMap<String, Node> _nodes = new ConcurrentHashMap<String, Node>();
+  private volatile int _failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+  private volatile long _openTime = DEFAULT_OPEN_TIME;
+  private volatile long _retryBackoff = DEFAULT_RETRY_BACKOFF;
+
+  public static SolrCircuitBreaker getInstance() {
+    return _instance;
+  }
+
+  private SolrCircuitBreaker() {
+  }
+
+  public void configure(Properties properties) {
+    if (properties.getProperty(SolrTools.CIRCUIT_FAILURE_THRESHOLD) != null) {
+      _failureThreshold = Math.max(1, Integer.parseInt(properties.getProperty(SolrTools.CIRCUIT_FAILURE_THRESHOLD)));
+    }
+    if (properties.getProperty(SolrTools.CIRCUIT_OPEN_TIME) != null) {
+      _openTime = Math.max(1, Long.parseLong(properties.getProperty(SolrTools.CIRCUIT_OPEN_TIME)));
+    }
+    if (properties.getProperty(SolrTools.RETRY_BACKOFF) != null) {
+      _retryBackoff = Math.max(1, Long.parseLong(properties.getProperty(SolrTools.RETRY_BACKOFF)));
+    }
+  }
+
+  /**
+   * һڵ۶״̬
+   */
+  private static class Node {
+    final String _key;
+    final AtomicInteger _state = new AtomicInteger(CLOSED);
+    final AtomicInteger _failures = new AtomicInteger();
+    volatile long _retryAt; //OPENʱ:ʲôʱ̽;HALF_OPENʱ:̽ûнٷһ
+    volatile long _openTime;
+
+    Node(String key, long openTime) {
+      _key = key;
+      _openTime = openTime;
+    }
+  }
+
+  private Node getNode(String url) {
+    String key = nodeKey(url);
+    Node node = _nodes.get(key);
+    if (node == null) {
+      Node newNode = new Node(key, _openTime);
+      node = _nodes.putIfAbsent(key, newNode);
+      if (node == null) {
+        node = newNode;
+      }
+    }
+    return node;
+  }
+
+  /**
+   * ȡURLscheme://host:port
+   */
+  static String nodeKey(String url) {
+    int schemeEnd = url.indexOf("://");
+    int pathStart = url.indexOf('/', schemeEnd < 0 ? 0 : schemeEnd + 3);
+    return pathStart < 0 ? url : url.substring(0, pathStart);
+  }
+
+  /**
+   * ڵǷԽ,ı״̬,ѡڵ
+   */
+  public boolean isCallable(String url) {
+    Node node = _nodes.get(nodeKey(url));
+    if (node == null) {
+      return true;
+    }
+    switch (node._state.get()) {
+      case CLOSED:
+        return true;
+      case OPEN:
+        return System.currentTimeMillis() >= node._retryAt;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * ڵǲ״̬(û۶,Ҳ̽)
+   */
+  public boolean isClosed(String url) {
+    Node node = _nodes.get(nodeKey(url));
+    return node == null || node._state.get() == CLOSED;
+  }
+
+  /**
+   * ֮ǰ,falseʱҪ.۶ʱֻһܵõtrue,Ϊ̽
+   */
+  public boolean allowRequest(String url) {
+    Node node = getNode(url);
+    while (true) {
+      int state = node._state.get();
+      if (state == CLOSED) {
+        return true;
+      }
+
+      long now = System.currentTimeMillis();
+      long retryAt = node._retryAt;
+      if (now < retryAt) {
+        return false;
+      }
+      if (state == OPEN) {
+        if (node._state.compareAndSet(OPEN, HALF_OPEN)) {
+          node._retryAt = now + node._openTime;
+          return true;
+        }
+      } else if (state == HALF_OPEN) { //ܾ̽ûн,ٷһ
+        synchronized (node) {
+          if (node._retryAt == retryAt && node._state.get() == HALF_OPEN) {
+            node._retryAt = now + node._openTime;
+            return true;
+          }
+        }
+      }
+    }
+  }
+
+  public void onSuccess(String url) {
+    Node node = getNode(url);
+    if (node._state.get() != CLOSED) {
+      synchronized (node) {
+        if (node._state.get() != CLOSED) {
+          node._state.set(CLOSED);
+          node._openTime = _openTime;
+          _logger.log(Level.INFO, "circuit closed:" + node._key);
+        }
+      }
+    }
+    if (node._failures.get() != 0) {
+      node._failures.set(0);
+    }
+  }
+
+  /**
+   * ȡ,ûн(ԳǸ).half-open̽,һ̽,
+   * ٵһ۶ʱ
+   */
+  public void onCancel(String url) {
+    Node node = _nodes.get(nodeKey(url));
+    if (node != null && node._state.get() == HALF_OPEN) {
+      synchronized (node) {
+        if (node._state.get() == HALF_OPEN) {
+          node._retryAt = 0;
+        }
+      }
+    }
+  }
+
+  /**
+   * ֻIOException(ʧ,ʱ)˵ڵ㲻,쳣˵ڵͨ
+   */
+  public void onFailure(String url, Exception e) {
+    if (!(e instanceof IOException)) {
+      onSuccess(url);
+      return;
+    }
+
+    Node node = getNode(url);
+    int failures = node._failures.incrementAndGet();
+    synchronized (node) {
+      int state = node._state.get();
+      if (state == HALF_OPEN) { //̽ʧ,۶ʱӱ
+        node._openTime = Math.min(node._openTime * 2, MAX_OPEN_TIME);
+        open(node, e);
+      } else if (state == CLOSED && failures >= _failureThreshold) {
+        open(node, e);
+      }
+    }
+  }
+
+  private void open(Node node, Exception e) {
+    long openTime = node._openTime;
+    openTime = openTime + (long) (openTime * 0.2 * _random.get().nextDouble()); //һ㶶,нڵͬʱ̽
+    node._retryAt = System.currentTimeMillis() + openTime;
+    node._state.set(OPEN);
+    _logger.log(Level.WARNING, "circuit open:" + node._key + ":for:" + openTime + "ms:" + e.getMessage());
+  }
+
+  /**
+   * ʼһ(),timeout
+   */
+  public Deadline newDeadline(long timeout) {
+    return new Deadline(System.currentTimeMillis() + timeout, _retryBackoff);
+  }
+
+  /**
+   * һĽֹʱ,ÿĳʱԼ֮˱
+   */
+  public static class Deadline {
+    private final long _deadline;
+    private final long _retryBackoff;
+
+    Deadline(long deadline, long retryBackoff) {
+      _deadline = deadline;
+      _retryBackoff = retryBackoff;
+    }
+
+    public long remaining() {
+      return _deadline - System.currentTimeMillis();
+    }
+
+    public boolean isExpired() {
+      return remaining() <= 0;
+    }
+
+    /**
+     * ĳʱʣµʱ.timeout<=0ʾ,ʱֱʣµʱ,ܱ1
+     */
+    public int timeout(int timeout) {
+      long limit = timeout <= 0 ? Integer.MAX_VALUE : timeout;
+      return (int) Math.max(1, Math.min(limit, remaining()));
+    }
+
+    /**
+     * attemptʧܺ˱:ָ,,MAX_RETRY_BACKOFFԼʣµʱ
+     */
+    public void backoff(int attempt) {
+      long max = Math.min(MAX_RETRY_BACKOFF, _retryBackoff << Math.min(attempt, 16));
+      long sleep = Math.min(max / 2 + (long) (max / 2 * _random.get().nextDouble()), remaining());
+      if (sleep <= 0) {
+        return;
+      }
+      try {
+        Thread.sleep(sleep);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
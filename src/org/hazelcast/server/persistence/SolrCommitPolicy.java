@@ -0,0 +1,145 @@
+package org.hazelcast.server.persistence;
+
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.logging.Logger;
+
+/**
+ * һStoreдSolrԺݿɼ(commitPolicy):
+ * <ul>
+ * <li>none - ,ȫSolrautoCommit/autoSoftCommit(ȱʡ,ǰһ)
+ * <li>commitWithin - ÿupdatecommitWithin,Solrʱںϲύ
+ * <li>softCommit - дʱStoreÿsoftCommitInterval뷢һsoftCommit,ûдͲ
+ * </ul>
+ * дöMapýϳļƵύ,öMapý϶̵ļݾɼ.
+ */
+public class SolrCommitPolicy {
+  private static final ILogger _logger = Logger.getLogger(SolrCommitPolicy.class.getName());
+
+  public static final String NONE = "none";
+  public static final String COMMIT_WITHIN = "commitWithin";
+  public static final String SOFT_COMMIT = "softCommit";
+
+  static final long DEFAULT_COMMIT_WITHIN = 1000L; //
+  static final long DEFAULT_SOFT_COMMIT_INTERVAL = 1000L; //
+
+  //StoreõsoftCommit߳,ػ߳,ֹJVM˳
+  private static final ScheduledExecutorService _scheduleCommit = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, "SolrCommitPolicy-softCommit");
+      t.setDaemon(true);
+      return t;
+    }
+  });
+
+  /**
+   * һsoftCommit
+   */
+  public interface Committer {
+    void commit() throws Exception;
+  }
+
+  private final String _name; //MapQueue,־
+  private String _policy = NONE;
+  private long _commitWithin = DEFAULT_COMMIT_WITHIN;
+  private long _softCommitInterval = DEFAULT_SOFT_COMMIT_INTERVAL;
+  private String _updateParams = ""; //update URLĲ
+
+  private final AtomicBoolean _dirty = new AtomicBoolean(false); //ϴsoftCommitԺûд
+  private Committer _committer;
+  private volatile ScheduledFuture<?> _commitFuture;
+
+  public SolrCommitPolicy(String name, Properties properties) {
+    _name = name;
+    if (properties.getProperty(SolrTools.COMMIT_POLICY) != null) {
+      _policy = properties.getProperty(SolrTools.COMMIT_POLICY).trim();
+    }
+    if (properties.getProperty(SolrTools.COMMIT_WITHIN) != null) {
+      _commitWithin = Math.max(1, Long.parseLong(properties.getProperty(SolrTools.COMMIT_WITHIN)));
+    }
+    if (properties.getProperty(SolrTools.SOFT_COMMIT_INTERVAL) != null) {
+      _softCommitInterval = Math.max(100, Long.parseLong(properties.getProperty(SolrTools.SOFT_COMMIT_INTERVAL)));
+    }
+
+    if (_policy.equalsIgnoreCase(COMMIT_WITHIN)) {
+      _policy = COMMIT_WITHIN;
+      _updateParams = "?commitWithin=" + _commitWithin;
+    } else if (_policy.equalsIgnoreCase(SOFT_COMMIT)) {
+      _policy = SOFT_COMMIT;
+    } else {
+      if (!_policy.equalsIgnoreCase(NONE)) {
+        _logger.log(Level.WARNING, "unknown " + SolrTools.COMMIT_POLICY + ":" + _policy + ", use " + NONE);
+      }
+      _policy = NONE;
+    }
+  }
+
+  public String getPolicy() {
+    return _policy;
+  }
+
+  /**
+   * update URLύ
+   */
+  public String updateUrl(String urlUpdate) {
+    return _updateParams.length() == 0 ? urlUpdate : urlUpdate + _updateParams;
+  }
+
+  /**
+   * ÿɹupdateԺ
+   */
+  public void onUpdate() {
+    if (_commitFuture != null) {
+      _dirty.set(true);
+    }
+  }
+
+  /**
+   * policysoftCommitʱʼʱύ
+   */
+  public synchronized void start(Committer committer) {
+    if (!SOFT_COMMIT.equals(_policy) || _commitFuture != null) {
+      return;
+    }
+    _committer = committer;
+    _commitFuture = _scheduleCommit.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        commitIfDirty();
+      }
+    }, _softCommitInterval, _softCommitInterval, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * ֹͣʱύ,ûύдʱύһ
+   */
+  public synchronized void stop() {
+    if (_commitFuture == null) {
+      return;
+    }
+    _commitFuture.cancel(false);
+    commitIfDirty();
+    _commitFuture = null;
+  }
+
+  private void commitIfDirty() {
+    if (!_dirty.compareAndSet(true, false)) {
+      return;
+    }
+    try {
+      _committer.commit();
+    } catch (Throwable e) { //쳣ֹʱ,´
+      _dirty.set(true);
+      _logger.log(Level.WARNING, "softCommit failed:" + _name + ":" + e.getMessage(), e);
+    }
+  }
+}
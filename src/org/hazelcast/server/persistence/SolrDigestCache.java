@@ -0,0 +1,199 @@
+package org.hazelcast.server.persistence;
+
+/**
+ * ÿkeyһγɹдSolrݵ64λժҪ,MapSolrStoreûб仯store.
+ * Hazelcastpartitionֶ,ÿһlonglongĿѰַϣ(keySolr id64λhash),
+ * keyvalue,ÿkeyֻռʮֽ.
+ * ժҪֻһʾ:ȷʱ(дʧ,partitionǨ,)ɾ,дһSolrǰȫ.
+ */
+public class SolrDigestCache {
+  static final int DEFAULT_MAX_ENTRIES = 1000 * 1000; //ȱʡౣժҪ
+
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  /**
+   * ̽longlongϣ,0ʾλ(hashΪ0key1)
+   */
+  private static class Segment {
+    private final int _maxEntries;
+    private long[] _keys;
+    private long[] _values;
+    private int _size = 0;
+
+    Segment(int maxEntries) {
+      _maxEntries = maxEntries;
+      _keys = new long[16];
+      _values = new long[16];
+    }
+
+    synchronized boolean contains(long key, long value) {
+      int index = find(_keys, key);
+      return _keys[index] == key && _values[index] == value;
+    }
+
+    synchronized void put(long key, long value) {
+      int index = find(_keys, key);
+      if (_keys[index] == key) {
+        _values[index] = value;
+        return;
+      }
+      if (_size >= _maxEntries) { //˾ȫ,ԺдSolr
+        clear();
+        index = find(_keys, key);
+      } else if ((_size + 1) * 4 > _keys.length * 3) {
+        resize(_keys.length * 2);
+        index = find(_keys, key);
+      }
+      _keys[index] = key;
+      _values[index] = value;
+      _size++;
+    }
+
+    synchronized void remove(long key) {
+      int index = find(_keys, key);
+      if (_keys[index] != key) {
+        return;
+      }
+      //ɾѺͬһԪǰŲ,̽ĲҲж
+      int mask = _keys.length - 1;
+      int hole = index;
+      int next = (hole + 1) & mask;
+      while (_keys[next] != 0) {
+        int home = mix(_keys[next]) & mask;
+        if (((next - home) & mask) >= ((next - hole) & mask)) {
+          _keys[hole] = _keys[next];
+          _values[hole] = _values[next];
+          hole = next;
+        }
+        next = (next + 1) & mask;
+      }
+      _keys[hole] = 0;
+      _values[hole] = 0;
+      _size--;
+    }
+
+    synchronized void clear() {
+      _keys = new long[16];
+      _values = new long[16];
+      _size = 0;
+    }
+
+    synchronized int size() {
+      return _size;
+    }
+
+    private void resize(int capacity) {
+      long[] oldKeys = _keys;
+      long[] oldValues = _values;
+      _keys = new long[capacity];
+      _values = new long[capacity];
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldKeys[i] != 0) {
+          int index = find(_keys, oldKeys[i]);
+          _keys[index] = oldKeys[i];
+          _values[index] = oldValues[i];
+        }
+      }
+    }
+
+    /**
+     * keyڵλ,ûʱӦòĿλ
+     */
+    private static int find(long[] keys, long key) {
+      int mask = keys.length - 1;
+      int index = mix(key) & mask;
+      while (keys[index] != 0 && keys[index] != key) {
+        index = (index + 1) & mask;
+      }
+      return index;
+    }
+
+    private static int mix(long key) {
+      return (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+    }
+  }
+
+  private final Segment[] _segments;
+
+  /**
+   * @param segments
+   *          - ,һHazelcastpartition
+   * @param maxEntries
+   *          - ౣժҪ,ƽֵÿһ
+   */
+  public SolrDigestCache(int segments, int maxEntries) {
+    _segments = new Segment[Math.max(1, segments)];
+    int maxPerSegment = Math.max(16, maxEntries / _segments.length);
+    for (int i = 0; i < _segments.length; i++) {
+      _segments[i] = new Segment(maxPerSegment);
+    }
+  }
+
+  /**
+   * ַ64λhash(FNV-1amurmur3fmix64),idݵժҪ
+   */
+  public static long hash64(CharSequence s, long seed) {
+    long h = FNV_OFFSET ^ seed;
+    for (int i = 0; i < s.length(); i++) {
+      h ^= s.charAt(i);
+      h *= FNV_PRIME;
+    }
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  private Segment segment(int segment) {
+    return _segments[(segment & Integer.MAX_VALUE) % _segments.length];
+  }
+
+  private static long key(long idHash) {
+    return idHash == 0 ? 1 : idHash;
+  }
+
+  /**
+   * idһγɹдSolrժҪǲdigest
+   */
+  public boolean contains(int segment, long idHash, long digest) {
+    return segment(segment).contains(key(idHash), digest);
+  }
+
+  /**
+   * дSolrɹԺ
+   */
+  public void put(int segment, long idHash, long digest) {
+    segment(segment).put(key(idHash), digest);
+  }
+
+  /**
+   * дSolr֮ǰԼɾԺ:дʧʱSolrݲȷ
+   */
+  public void remove(int segment, long idHash) {
+    segment(segment).remove(key(idHash));
+  }
+
+  /**
+   * partitionǨʱ,ĽڵѾдpartitionkey
+   */
+  public void clear(int segment) {
+    segment(segment).clear();
+  }
+
+  public void clear() {
+    for (Segment segment : _segments) {
+      segment.clear();
+    }
+  }
+
+  public long size() {
+    long size = 0;
+    for (Segment segment : _segments) {
+      size = size + segment.size();
+    }
+    return size;
+  }
+}
@@ -0,0 +1,217 @@
+package org.hazelcast.server.persistence;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.logging.Logger;
+
+/**
+ * ں̨ʱһdelete-by-queryɾһMapSolrѾڵĵ.
+ * loadloadAllKeysڵĵֻ,ٵrequestSweep()ǰ,ڼصĹͬɾ.
+ * SolrػڴHazelcast¼TTL,evictAt()ԭĹʱ䵽Ժڴ.
+ * maxEvictionskey,ԺڵЩ,ֻܵHazelcastԼTTL,¼ʱĵĹʱ.
+ */
+public class SolrExpirySweeper {
+  private static final ILogger _logger = Logger.getLogger(SolrExpirySweeper.class.getName());
+
+  static final long DEFAULT_SWEEP_INTERVAL = 60 * 60L; //ʱȱʡ()
+  static final long MIN_REQUEST_INTERVAL = 60 * 1000L; //requestSweep()ÿһ()
+  static final long EVICT_INTERVAL = 1000L; //鵽ļ,Ҳʱľ()
+  static final int DEFAULT_MAX_EVICTIONS = 100000; //Ƕٸkey
+
+  //Mapõ߳,ػ߳,ֹJVM˳
+  private static final ScheduledExecutorService _scheduleSweep = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, "SolrExpirySweeper");
+      t.setDaemon(true);
+      return t;
+    }
+  });
+
+  public interface Purger {
+    /**
+     * ɾnow֮ǰڵĵ
+     */
+    void purgeExpired(long now) throws Exception;
+
+    /**
+     * ڴԺѾڵkey
+     */
+    void evictExpired(Object key) throws Exception;
+  }
+
+  private final String _name; //Map,־
+  private final long _sweepInterval; //
+  private final Purger _purger;
+  private final int _maxEvictions;
+
+  private final AtomicBoolean _requested = new AtomicBoolean(false);
+  private volatile long _lastSweep = 0;
+  private volatile ScheduledFuture<?> _sweepFuture;
+  private volatile ScheduledFuture<?> _evictFuture;
+
+  //Ĵkey;_deadlinesÿkeyǰĵ,ԲϵѾϵ
+  private final ConcurrentSkipListMap<Long, Queue<Object>> _evictions = new ConcurrentSkipListMap<Long, Queue<Object>>();
+  private final ConcurrentHashMap<Object, Long> _deadlines = new ConcurrentHashMap<Object, Long>();
+  private final AtomicLong _droppedEvictions = new AtomicLong();
+
+  private final Runnable _sweepTask = new Runnable() {
+    @Override
+    public void run() {
+      sweep();
+    }
+  };
+
+  private final Runnable _evictTask = new Runnable() {
+    @Override
+    public void run() {
+      evict();
+    }
+  };
+
+  /**
+   * @param sweepInterval
+   *          - ʱļ()
+   * @param maxEvictions
+   *          - Ƕٸkey
+   */
+  public SolrExpirySweeper(String name, long sweepInterval, int maxEvictions, Purger purger) {
+    _name = name;
+    _sweepInterval = Math.max(1, sweepInterval) * 1000L;
+    _maxEvictions = Math.max(0, maxEvictions);
+    _purger = purger;
+  }
+
+  public synchronized void start() {
+    if (_sweepFuture == null) {
+      _sweepFuture = _scheduleSweep.scheduleWithFixedDelay(_sweepTask, _sweepInterval, _sweepInterval, TimeUnit.MILLISECONDS);
+      _evictFuture = _scheduleSweep.scheduleWithFixedDelay(_evictTask, EVICT_INTERVAL, EVICT_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  public synchronized void stop() {
+    if (_sweepFuture != null) {
+      _sweepFuture.cancel(false);
+      _sweepFuture = null;
+      _evictFuture.cancel(false);
+      _evictFuture = null;
+    }
+    _evictions.clear();
+    _deadlines.clear();
+  }
+
+  /**
+   * keyexpireTime(),ʱڴ
+   */
+  public void evictAt(Object key, long expireTime) {
+    if (_evictFuture == null) {
+      return;
+    }
+    Long second = expireTime / 1000L;
+    if (!_deadlines.containsKey(key) && _deadlines.size() >= _maxEvictions) {
+      Map.Entry<Long, Queue<Object>> last = _evictions.lastEntry();
+      if (last == null || second.longValue() >= last.getKey().longValue()) {
+        _droppedEvictions.incrementAndGet();
+        return;
+      }
+      //ڵһ,絽ڵkeyڵط
+      if (_evictions.remove(last.getKey(), last.getValue())) {
+        for (Object k : last.getValue()) {
+          if (_deadlines.remove(k, last.getKey())) {
+            _droppedEvictions.incrementAndGet();
+          }
+        }
+      }
+    }
+    if (second.equals(_deadlines.put(key, second))) { //¼صkeyʱû,Ѿڶ
+      return;
+    }
+    Queue<Object> keys = _evictions.get(second);
+    if (keys == null) {
+      keys = new ConcurrentLinkedQueue<Object>();
+      Queue<Object> old = _evictions.putIfAbsent(second, keys);
+      if (old != null) {
+        keys = old;
+      }
+    }
+    keys.add(key);
+  }
+
+  /**
+   * keyԺд,ѾµTTL,
+   */
+  public void forget(Object key) {
+    if (!_deadlines.isEmpty()) {
+      _deadlines.remove(key);
+    }
+  }
+
+  public int getPendingEvictions() {
+    return _deadlines.size();
+  }
+
+  public long getDroppedEvictions() {
+    return _droppedEvictions.get();
+  }
+
+  /**
+   * ˹ڵĵ,󾡿һ.ȴ
+   */
+  public void requestSweep() {
+    if (_sweepFuture == null || !_requested.compareAndSet(false, true)) {
+      return;
+    }
+    long delay = Math.max(0, _lastSweep + MIN_REQUEST_INTERVAL - System.currentTimeMillis());
+    _scheduleSweep.schedule(_sweepTask, delay, TimeUnit.MILLISECONDS);
+  }
+
+  private void evict() {
+    ConcurrentNavigableMap<Long, Queue<Object>> due = _evictions.headMap(System.currentTimeMillis() / 1000L, true);
+    for (Iterator<Map.Entry<Long, Queue<Object>>> it = due.entrySet().iterator(); it.hasNext();) {
+      Map.Entry<Long, Queue<Object>> entry = it.next();
+      Queue<Object> keys = entry.getValue();
+      it.remove(); //ó,֮evictAt()һkeyŽµĶ,´ٴ
+      Object key;
+      while ((key = keys.poll()) != null) {
+        if (!_deadlines.remove(key, entry.getKey())) { //Ѿforget()߻˵ʱ
+          continue;
+        }
+        try {
+          _purger.evictExpired(key);
+        } catch (Throwable e) { //쳣ֹʱ
+          _logger.log(Level.WARNING, "evict expired key failed:" + _name + ":" + e.getMessage(), e);
+        }
+      }
+    }
+  }
+
+  private void sweep() {
+    _requested.set(false);
+    if (_sweepFuture == null) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    _lastSweep = now;
+    try {
+      _purger.purgeExpired(now);
+      _logger.log(Level.FINE, "purged expired documents:" + _name);
+    } catch (Throwable e) { //쳣ֹʱ
+      _logger.log(Level.WARNING, "purge expired documents failed:" + _name + ":" + e.getMessage(), e);
+    }
+  }
+}
@@ -0,0 +1,129 @@
+package org.hazelcast.server.persistence;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Գ(hedged read)Ĳ:ȶ÷Գ,Լܷܲ.
+ * ȴʱóɹ̶ֵ,realtime getӳٵp95.
+ * ԳͰһٷֱ,SolrʱԳѸط.
+ */
+public class SolrHedgePolicy {
+  static final int DEFAULT_BUDGET_PERCENT = 5; //Գռİٷֱ
+  static final long DEFAULT_DELAY = 50L; //ʱĵȴʱ()
+  static final int SAMPLES = 512; //p95õ
+  static final int MIN_SAMPLES = 100; //ʱp95
+  static final long RECOMPUTE_INTERVAL = 1000L; //p95ˢ¼()
+  static final long MAX_TOKENS = 10 * 1000L; //Ͱ10Գ
+
+  private final long _fixedDelay; //>0ʱù̶ĵȴʱ
+  private final long _tokensPerRequest; //ÿͰӵ,1000ƿԷһԳ
+
+  private final AtomicLongArray _samples = new AtomicLongArray(SAMPLES); //
+  private final AtomicInteger _sampleIndex = new AtomicInteger();
+  private final AtomicLong _nextRecompute = new AtomicLong();
+  private volatile long _p95Delay = DEFAULT_DELAY;
+
+  private final AtomicLong _tokens = new AtomicLong();
+  private final AtomicLong _requests = new AtomicLong();
+  private final AtomicLong _hedges = new AtomicLong();
+  private final AtomicLong _hedgeWins = new AtomicLong();
+
+  /**
+   * @param fixedDelay
+   *          - Գǰȴĺ,<=0ʱù۲쵽p95
+   * @param budgetPercent
+   *          - Գռİٷֱ
+   */
+  public SolrHedgePolicy(long fixedDelay, int budgetPercent) {
+    _fixedDelay = fixedDelay;
+    _tokensPerRequest = Math.max(0, Math.min(100, budgetPercent)) * 10L;
+  }
+
+  /**
+   * ¼һγɹrealtime getӳ
+   */
+  public void record(long nanos) {
+    int i = _sampleIndex.getAndIncrement();
+    _samples.set((i & Integer.MAX_VALUE) % SAMPLES, nanos);
+  }
+
+  /**
+   * Գǰȴĺ
+   */
+  public long getHedgeDelay() {
+    if (_fixedDelay > 0) {
+      return _fixedDelay;
+    }
+
+    long now = System.currentTimeMillis();
+    long next = _nextRecompute.get();
+    if (now >= next && _nextRecompute.compareAndSet(next, now + RECOMPUTE_INTERVAL)) {
+      recomputeP95();
+    }
+    return _p95Delay;
+  }
+
+  private void recomputeP95() {
+    int count = Math.min(_sampleIndex.get() & Integer.MAX_VALUE, SAMPLES);
+    if (count < MIN_SAMPLES) {
+      return;
+    }
+    long[] sorted = new long[count];
+    for (int i = 0; i < count; i++) {
+      sorted[i] = _samples.get(i);
+    }
+    Arrays.sort(sorted);
+    _p95Delay = Math.max(1, sorted[(int) (count * 0.95)] / (1000 * 1000));
+  }
+
+  /**
+   * ÿһ,Ͱ
+   */
+  public void onRequest() {
+    _requests.incrementAndGet();
+    while (true) {
+      long tokens = _tokens.get();
+      if (tokens >= MAX_TOKENS || _tokens.compareAndSet(tokens, Math.min(MAX_TOKENS, tokens + _tokensPerRequest))) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * ƹһԳʱ۵Ʋtrue
+   */
+  public boolean tryHedge() {
+    while (true) {
+      long tokens = _tokens.get();
+      if (tokens < 1000) {
+        return false;
+      }
+      if (_tokens.compareAndSet(tokens, tokens - 1000)) {
+        _hedges.incrementAndGet();
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Գԭȷ
+   */
+  public void onHedgeWin() {
+    _hedgeWins.incrementAndGet();
+  }
+
+  public long getRequests() {
+    return _requests.get();
+  }
+
+  public long getHedges() {
+    return _hedges.get();
+  }
+
+  public long getHedgeWins() {
+    return _hedgeWins.get();
+  }
+}
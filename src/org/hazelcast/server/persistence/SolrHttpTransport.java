@@ -0,0 +1,900 @@
+package org.hazelcast.server.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.net.ssl.SSLSocketFactory;
+
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.logging.Logger;
+
+/**
+ * ڳ־ӵHTTP/1.1,host:portά޵ӳ.
+ * еSolr Storeһʵ,ӼͳͨJMX¶.
+ */
+public class SolrHttpTransport implements SolrHttpTransportMBean {
+  private static final ILogger _logger = Logger.getLogger(SolrHttpTransport.class.getName());
+
+  static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 32; //ÿhostͬʱ򿪵
+  static final long DEFAULT_IDLE_TIMEOUT = 30 * 1000L; //ӿгʱ͹ر
+  static final long DEFAULT_MAX_LIFETIME = 10 * 60 * 1000L; //Ӵʱ͹ر
+  static final int MAX_BUFFERED_BODY = 8192; //BodyWriterдݲʱ,Content-Lengthʽ
+
+  private static final byte[] CRLF = { '\r', '\n' };
+
+  private static final SolrHttpTransport _instance = new SolrHttpTransport();
+
+  private volatile int _maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+  private volatile long _idleTimeout = DEFAULT_IDLE_TIMEOUT;
+  private volatile long _maxLifetime = DEFAULT_MAX_LIFETIME;
+
+  private final ConcurrentMap<String, HostPool> _pools = new ConcurrentHashMap<String, HostPool>();
+  private final ConcurrentMap<String, Target> _targets = new ConcurrentHashMap<String, Target>(); //ԤȽõURLǰ׺
+
+  private final AtomicLong _requests = new AtomicLong();
+  private final AtomicLong _failedRequests = new AtomicLong();
+  private final AtomicLong _connectionsCreated = new AtomicLong();
+  private final AtomicLong _connectionsReused = new AtomicLong();
+  private final AtomicLong _connectionsClosed = new AtomicLong();
+  private final AtomicLong _connectionsExpired = new AtomicLong();
+  private final AtomicLong _staleRetries = new AtomicLong();
+
+  /**
+   * ʽ,ֱдӵ,δ֪,chunkedʽ.
+   * õʧЧʱٵһwriteTo,Աظд
+   */
+  public interface BodyWriter {
+    void writeTo(OutputStream out) throws IOException;
+  }
+
+  public static SolrHttpTransport getInstance() {
+    return _instance;
+  }
+
+  private SolrHttpTransport() {
+    try {
+      MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName("org.hazelcast.server.persistence:type=SolrHttpTransport");
+      if (!mbs.isRegistered(name)) {
+        mbs.registerMBean(this, name);
+      }
+    } catch (Exception ex) {
+      _logger.log(Level.WARNING, ex.getMessage(), ex);
+    }
+  }
+
+  /**
+   * Storeõӳز,ûõֲ
+   */
+  public void configure(Properties properties) {
+    if (properties.getProperty(SolrTools.MAX_CONNECTIONS_PER_HOST) != null) {
+      _maxConnectionsPerHost = Integer.parseInt(properties.getProperty(SolrTools.MAX_CONNECTIONS_PER_HOST));
+      for (HostPool pool : _pools.values()) { //ѾõӳҲҪŵ
+        pool.resize(_maxConnectionsPerHost);
+      }
+    }
+    if (properties.getProperty(SolrTools.CONNECTION_IDLE_TIMEOUT) != null) {
+      _idleTimeout = Integer.parseInt(properties.getProperty(SolrTools.CONNECTION_IDLE_TIMEOUT)) * 1000L;
+    }
+    if (properties.getProperty(SolrTools.CONNECTION_MAX_LIFETIME) != null) {
+      _maxLifetime = Integer.parseInt(properties.getProperty(SolrTools.CONNECTION_MAX_LIFETIME)) * 1000L;
+    }
+  }
+
+  /**
+   * һHTTP,߱finally÷ֵclose()
+   *
+   * @param method
+   *          - GETPOST
+   * @param urlstr
+   *          - URL
+   * @param contentType
+   *          - ,ûʱΪnull
+   * @param body
+   *          - ,ûʱΪnull
+   * @param authorization
+   *          - Authorizationͷ,ҪʱΪnull
+   */
+  public Response execute(String method, String urlstr, String contentType, byte[] body, String authorization,
+      int connectTimeout, int readTimeout) throws IOException {
+    return execute(method, urlstr, contentType, body, null, authorization, connectTimeout, readTimeout);
+  }
+
+  /**
+   * executeһ,bodyWriterֱд,Ҫڴbyte[].
+   * MAX_BUFFERED_BODYСȻ,Content-Lengthʽ,ʡchunkedĿ
+   */
+  public Response execute(String method, String urlstr, String contentType, BodyWriter bodyWriter, String authorization,
+      int connectTimeout, int readTimeout) throws IOException {
+    byte[] body = bufferSmallBody(bodyWriter);
+    if (body != null) {
+      return execute(method, urlstr, contentType, body, null, authorization, connectTimeout, readTimeout);
+    }
+    return execute(method, urlstr, contentType, null, bodyWriter, authorization, connectTimeout, readTimeout);
+  }
+
+  /**
+   * bodyWriterдһ޵Ļ,MAX_BUFFERED_BODYʱ,null
+   */
+  static byte[] bufferSmallBody(BodyWriter bodyWriter) throws IOException {
+    BoundedOutputStream buffer = new BoundedOutputStream(MAX_BUFFERED_BODY);
+    try {
+      bodyWriter.writeTo(buffer);
+    } catch (BodyTooLargeException e) {
+      return null;
+    }
+    return buffer.toByteArray();
+  }
+
+  private Response execute(String method, String urlstr, String contentType, byte[] body, BodyWriter bodyWriter,
+      String authorization, int connectTimeout, int readTimeout) throws IOException {
+    Target target = getTarget(urlstr);
+    HostPool pool = getPool(target);
+    _requests.incrementAndGet();
+
+    boolean retried = false;
+    while (true) {
+      PooledConnection conn = pool.lease(connectTimeout, readTimeout);
+      try {
+        conn._socket.setSoTimeout(readTimeout);
+        writeRequest(conn, method, target, urlstr, contentType, body, bodyWriter, authorization);
+        return readResponse(conn);
+      } catch (IOException ex) {
+        pool.discard(conn);
+        //õӿѾص,һһ
+        if (conn._reused && !retried && isStale(ex)) {
+          retried = true;
+          _staleRetries.incrementAndGet();
+          continue;
+        }
+        _failedRequests.incrementAndGet();
+        throw ex;
+      } catch (RuntimeException ex) {
+        pool.discard(conn);
+        _failedRequests.incrementAndGet();
+        throw ex;
+      }
+    }
+  }
+
+  private static boolean isStale(IOException ex) {
+    return ex instanceof EOFException || ex instanceof SocketException;
+  }
+
+  private Target getTarget(String urlstr) throws IOException {
+    int schemeEnd = urlstr.indexOf("://");
+    if (schemeEnd < 0) {
+      throw new IOException("malformed URL:" + urlstr);
+    }
+    int pathStart = urlstr.indexOf('/', schemeEnd + 3);
+    String prefix = pathStart < 0 ? urlstr : urlstr.substring(0, pathStart);
+
+    Target target = _targets.get(prefix);
+    if (target == null) {
+      target = new Target(prefix, schemeEnd);
+      _targets.putIfAbsent(prefix, target);
+    }
+    return target;
+  }
+
+  private HostPool getPool(Target target) {
+    HostPool pool = _pools.get(target._hostKey);
+    if (pool == null) {
+      pool = new HostPool(target);
+      HostPool old = _pools.putIfAbsent(target._hostKey, pool);
+      if (old != null) {
+        pool = old;
+      }
+    }
+    return pool;
+  }
+
+  private void writeRequest(PooledConnection conn, String method, Target target, String urlstr, String contentType,
+      byte[] body, BodyWriter bodyWriter, String authorization) throws IOException {
+    String path = urlstr.length() > target._prefix.length() ? urlstr.substring(target._prefix.length()) : "/";
+
+    StringBuilder head = new StringBuilder(256 + path.length());
+    head.append(method).append(' ').append(path).append(" HTTP/1.1\r\n");
+    head.append("Host: ").append(target._hostHeader).append("\r\n");
+    head.append("Accept: */*\r\n");
+    head.append("Connection: keep-alive\r\n");
+    if (authorization != null) {
+      head.append("Authorization: ").append(authorization).append("\r\n");
+    }
+    if (body != null) {
+      head.append("Content-Type: ").append(contentType).append("\r\n");
+      head.append("Content-Length: ").append(body.length).append("\r\n");
+    } else if (bodyWriter != null) {
+      head.append("Content-Type: ").append(contentType).append("\r\n");
+      head.append("Transfer-Encoding: chunked\r\n");
+    }
+    head.append("\r\n");
+
+    OutputStream out = conn._out;
+    out.write(head.toString().getBytes("ISO-8859-1"));
+    if (body != null) {
+      out.write(body);
+    } else if (bodyWriter != null) {
+      ChunkedOutputStream chunked = new ChunkedOutputStream(out);
+      bodyWriter.writeTo(chunked);
+      chunked.finish();
+    }
+    out.flush();
+  }
+
+  private Response readResponse(PooledConnection conn) throws IOException {
+    InputStream in = conn._in;
+    String statusLine;
+    int status;
+    while (true) {
+      statusLine = readLine(in);
+      if (statusLine == null) {
+        throw new EOFException("connection closed by server");
+      }
+      int sp = statusLine.indexOf(' ');
+      if (sp < 0 || !statusLine.startsWith("HTTP/")) {
+        throw new IOException("malformed status line:" + statusLine);
+      }
+      int sp2 = statusLine.indexOf(' ', sp + 1);
+      status = Integer.parseInt(sp2 < 0 ? statusLine.substring(sp + 1).trim() : statusLine.substring(sp + 1, sp2));
+      if (status / 100 != 1) {
+        break;
+      }
+      //100 Continue֮мӦֻͷûӦ,,Ӧں
+      String line;
+      while ((line = readLine(in)) != null && line.length() > 0) {
+      }
+      if (line == null) {
+        throw new EOFException("connection closed by server");
+      }
+    }
+    boolean keepAlive = statusLine.startsWith("HTTP/1.1");
+
+    long contentLength = -1;
+    boolean chunked = false;
+    String line;
+    while ((line = readLine(in)) != null && line.length() > 0) {
+      int colon = line.indexOf(':');
+      if (colon <= 0) {
+        continue;
+      }
+      String name = line.substring(0, colon).trim();
+      String value = line.substring(colon + 1).trim();
+      if (name.equalsIgnoreCase("Content-Length")) {
+        contentLength = Long.parseLong(value);
+      } else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+        chunked = value.toLowerCase().indexOf("chunked") >= 0;
+      } else if (name.equalsIgnoreCase("Connection")) {
+        if (value.equalsIgnoreCase("close")) {
+          keepAlive = false;
+        } else if (value.equalsIgnoreCase("keep-alive")) {
+          keepAlive = true;
+        }
+      }
+    }
+    if (line == null) {
+      throw new EOFException("connection closed by server");
+    }
+
+    InputStream body;
+    if (status == 204 || status == 304) {
+      body = new FixedLengthInputStream(in, 0);
+    } else if (chunked) {
+      body = new ChunkedInputStream(in);
+    } else if (contentLength >= 0) {
+      body = new FixedLengthInputStream(in, contentLength);
+    } else {
+      body = in; //ûгϢ,ֻܶӹرΪֹ
+      keepAlive = false;
+    }
+
+    return new Response(status, body, conn, keepAlive);
+  }
+
+  static String readLine(InputStream in) throws IOException {
+    StringBuilder sb = new StringBuilder(64);
+    int c;
+    while ((c = in.read()) != -1) {
+      if (c == '\n') {
+        int len = sb.length();
+        if (len > 0 && sb.charAt(len - 1) == '\r') {
+          sb.setLength(len - 1);
+        }
+        return sb.toString();
+      }
+      sb.append((char) c);
+    }
+    return sb.length() == 0 ? null : sb.toString();
+  }
+
+  @Override
+  public long getRequests() {
+    return _requests.get();
+  }
+
+  @Override
+  public long getFailedRequests() {
+    return _failedRequests.get();
+  }
+
+  @Override
+  public long getConnectionsCreated() {
+    return _connectionsCreated.get();
+  }
+
+  @Override
+  public long getConnectionsReused() {
+    return _connectionsReused.get();
+  }
+
+  @Override
+  public long getConnectionsClosed() {
+    return _connectionsClosed.get();
+  }
+
+  @Override
+  public long getConnectionsExpired() {
+    return _connectionsExpired.get();
+  }
+
+  @Override
+  public long getStaleRetries() {
+    return _staleRetries.get();
+  }
+
+  @Override
+  public double getReuseRate() {
+    long reused = _connectionsReused.get();
+    long total = reused + _connectionsCreated.get();
+    return total == 0 ? 0 : (double) reused / total;
+  }
+
+  @Override
+  public int getIdleConnections() {
+    int idle = 0;
+    for (HostPool pool : _pools.values()) {
+      idle = idle + pool._idle.size();
+    }
+    return idle;
+  }
+
+  @Override
+  public int getLeasedConnections() {
+    int leased = 0;
+    for (HostPool pool : _pools.values()) {
+      leased = leased + pool._leased.get();
+    }
+    return leased;
+  }
+
+  @Override
+  public int getMaxConnectionsPerHost() {
+    return _maxConnectionsPerHost;
+  }
+
+  @Override
+  public void closeIdleConnections() {
+    for (HostPool pool : _pools.values()) {
+      PooledConnection conn;
+      while ((conn = pool._idle.pollLast()) != null) {
+        pool.close(conn);
+      }
+    }
+  }
+
+  /**
+   * ԤȽõURLǰ׺(scheme://host:port)
+   */
+  static class Target {
+    final String _prefix;
+    final String _host;
+    final int _port;
+    final boolean _ssl;
+    final String _hostKey;
+    final String _hostHeader;
+
+    Target(String prefix, int schemeEnd) throws IOException {
+      _prefix = prefix;
+      String scheme = prefix.substring(0, schemeEnd).toLowerCase();
+      if (scheme.equals("http")) {
+        _ssl = false;
+      } else if (scheme.equals("https")) {
+        _ssl = true;
+      } else {
+        throw new IOException("unsupported scheme:" + prefix);
+      }
+
+      String hostPort = prefix.substring(schemeEnd + 3);
+      int at = hostPort.lastIndexOf('@');
+      if (at >= 0) {
+        hostPort = hostPort.substring(at + 1);
+      }
+      int colon = hostPort.lastIndexOf(':');
+      if (colon > 0 && hostPort.indexOf(']', colon) < 0) {
+        _host = hostPort.substring(0, colon);
+        _port = Integer.parseInt(hostPort.substring(colon + 1));
+      } else {
+        _host = hostPort;
+        _port = _ssl ? 443 : 80;
+      }
+      _hostKey = scheme + "://" + _host + ":" + _port;
+      _hostHeader = hostPort;
+    }
+  }
+
+  /**
+   * ԼSemaphore
+   */
+  private static class PoolSemaphore extends Semaphore {
+    private static final long serialVersionUID = 1L;
+
+    PoolSemaphore(int permits) {
+      super(permits, true);
+    }
+
+    @Override
+    protected void reducePermits(int reduction) {
+      super.reducePermits(reduction);
+    }
+  }
+
+  /**
+   * hostӳ,_permitsͬʱ򿪵,_idleǿԸõĿ(ȳ)
+   */
+  class HostPool {
+    final Target _target;
+    final LinkedBlockingDeque<PooledConnection> _idle = new LinkedBlockingDeque<PooledConnection>();
+    final PoolSemaphore _permits;
+    final AtomicInteger _leased = new AtomicInteger();
+    volatile int _maxConnections; //HostPoolͬ޸
+
+    HostPool(Target target) {
+      _target = target;
+      _maxConnections = _maxConnectionsPerHost;
+      _permits = new PoolSemaphore(_maxConnections);
+    }
+
+    /**
+     * .ʱȹصĿ,õӹ黹Ժ󳬳޵Ĳ½ر
+     */
+    synchronized void resize(int maxConnections) {
+      int delta = maxConnections - _maxConnections;
+      _maxConnections = maxConnections;
+      if (delta > 0) {
+        _permits.release(delta);
+      } else if (delta < 0) {
+        _permits.reducePermits(-delta);
+        PooledConnection conn;
+        for (int i = 0; i < -delta && (conn = _idle.pollLast()) != null; i++) {
+          close(conn);
+        }
+      }
+    }
+
+    PooledConnection lease(int connectTimeout, int readTimeout) throws IOException {
+      PooledConnection conn;
+      long now = System.currentTimeMillis();
+      while ((conn = _idle.pollFirst()) != null) {
+        if (conn.isExpired(now) || conn._socket.isClosed()) {
+          _connectionsExpired.incrementAndGet();
+          close(conn);
+          continue;
+        }
+        conn._reused = true;
+        _connectionsReused.incrementAndGet();
+        _leased.incrementAndGet();
+        return conn;
+      }
+
+      try {
+        if (!_permits.tryAcquire(connectTimeout > 0 ? connectTimeout : Long.MAX_VALUE, TimeUnit.MILLISECONDS)) {
+          throw new IOException("connection pool exhausted:" + _target._hostKey + ":max:" + _maxConnections);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("interrupted while waiting for connection:" + _target._hostKey);
+      }
+
+      //ȴڼӱ黹
+      conn = _idle.pollFirst();
+      if (conn != null && !conn.isExpired(System.currentTimeMillis()) && !conn._socket.isClosed()) {
+        _permits.release();
+        conn._reused = true;
+        _connectionsReused.incrementAndGet();
+        _leased.incrementAndGet();
+        return conn;
+      } else if (conn != null) {
+        _connectionsExpired.incrementAndGet();
+        close(conn);
+      }
+
+      try {
+        conn = open(connectTimeout, readTimeout);
+      } catch (IOException ex) {
+        _permits.release();
+        throw ex;
+      } catch (RuntimeException ex) {
+        _permits.release();
+        throw ex;
+      }
+      _connectionsCreated.incrementAndGet();
+      _leased.incrementAndGet();
+      return conn;
+    }
+
+    private PooledConnection open(int connectTimeout, int readTimeout) throws IOException {
+      Socket socket;
+      if (_target._ssl) {
+        socket = SSLSocketFactory.getDefault().createSocket();
+      } else {
+        socket = new Socket();
+      }
+      try {
+        socket.setTcpNoDelay(true);
+        socket.setKeepAlive(true);
+        socket.setSoTimeout(readTimeout);
+        socket.connect(new InetSocketAddress(_target._host, _target._port), connectTimeout);
+        return new PooledConnection(this, socket);
+      } catch (IOException ex) {
+        try {
+          socket.close();
+        } catch (IOException e) {
+        }
+        throw ex;
+      }
+    }
+
+    void release(PooledConnection conn) {
+      _leased.decrementAndGet();
+      long now = System.currentTimeMillis();
+      if (conn.isExpired(now)) {
+        _connectionsExpired.incrementAndGet();
+        close(conn);
+        return;
+      }
+      if (_permits.availablePermits() < 0) { //resize(),򿪵ӻ
+        close(conn);
+        return;
+      }
+      conn._lastUsed = now;
+      //ȷŻȥٹ黹,֤ȴɵ߳õ.Ѿ򿪵ӱռһ
+      _idle.offerFirst(conn);
+      evictIdle(now);
+    }
+
+    void discard(PooledConnection conn) {
+      _leased.decrementAndGet();
+      close(conn);
+    }
+
+    void close(PooledConnection conn) {
+      closeSocket(conn);
+      _permits.release();
+    }
+
+    private void closeSocket(PooledConnection conn) {
+      _connectionsClosed.incrementAndGet();
+      try {
+        conn._socket.close();
+      } catch (IOException e) {
+      }
+    }
+
+    //ûõһʱĿ
+    private void evictIdle(long now) {
+      Iterator<PooledConnection> it = _idle.descendingIterator();
+      while (it.hasNext()) {
+        PooledConnection conn = it.next();
+        if (!conn.isExpired(now)) {
+          break;
+        }
+        if (_idle.removeLastOccurrence(conn)) {
+          _connectionsExpired.incrementAndGet();
+          close(conn);
+        }
+      }
+    }
+  }
+
+  class PooledConnection {
+    final HostPool _pool;
+    final Socket _socket;
+    final InputStream _in;
+    final OutputStream _out;
+    final long _created = System.currentTimeMillis();
+    volatile long _lastUsed = _created;
+    volatile boolean _reused = false;
+
+    PooledConnection(HostPool pool, Socket socket) throws IOException {
+      _pool = pool;
+      _socket = socket;
+      _in = new BufferedInputStream(socket.getInputStream(), 8192);
+      _out = new BufferedOutputStream(socket.getOutputStream(), 8192);
+    }
+
+    boolean isExpired(long now) {
+      return (now - _lastUsed) >= _idleTimeout || (now - _created) >= _maxLifetime;
+    }
+  }
+
+  /**
+   * HTTPӦ.ӦܰӷŻس,close()ʱر
+   */
+  public static class Response {
+    private final int _status;
+    private final InputStream _body;
+    private final PooledConnection _conn;
+    private final boolean _keepAlive;
+    private boolean _closed = false;
+
+    Response(int status, InputStream body, PooledConnection conn, boolean keepAlive) {
+      _status = status;
+      _body = body;
+      _conn = conn;
+      _keepAlive = keepAlive;
+    }
+
+    public int getStatus() {
+      return _status;
+    }
+
+    public InputStream getBody() {
+      return _body;
+    }
+
+    /**
+     * ӦַرӦ
+     */
+    public String readString(String charset) throws IOException {
+      try {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        byte[] buf = new byte[4096];
+        int n;
+        while ((n = _body.read(buf)) != -1) {
+          out.write(buf, 0, n);
+        }
+        return out.toString(charset);
+      } finally {
+        close();
+      }
+    }
+
+    public void close() {
+      if (_closed) {
+        return;
+      }
+      _closed = true;
+
+      boolean reusable = _keepAlive;
+      if (reusable) {
+        if (_body instanceof FixedLengthInputStream) {
+          reusable = ((FixedLengthInputStream) _body).isDone();
+        } else if (_body instanceof ChunkedInputStream) {
+          reusable = ((ChunkedInputStream) _body).isDone();
+        } else {
+          reusable = false;
+        }
+      }
+      if (reusable) {
+        _conn._pool.release(_conn);
+      } else {
+        _conn._pool.discard(_conn);
+      }
+    }
+  }
+
+  static class FixedLengthInputStream extends InputStream {
+    private final InputStream _in;
+    private long _remaining;
+
+    FixedLengthInputStream(InputStream in, long length) {
+      _in = in;
+      _remaining = length;
+    }
+
+    boolean isDone() {
+      return _remaining == 0;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (_remaining <= 0) {
+        return -1;
+      }
+      int c = _in.read();
+      if (c == -1) {
+        throw new EOFException("unexpected end of response body");
+      }
+      _remaining--;
+      return c;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (_remaining <= 0) {
+        return -1;
+      }
+      int n = _in.read(b, off, (int) Math.min(len, _remaining));
+      if (n == -1) {
+        throw new EOFException("unexpected end of response body");
+      }
+      _remaining = _remaining - n;
+      return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return (int) Math.min(_in.available(), _remaining);
+    }
+  }
+
+  static class ChunkedInputStream extends InputStream {
+    private final InputStream _in;
+    private long _chunkRemaining = 0;
+    private boolean _done = false;
+
+    ChunkedInputStream(InputStream in) {
+      _in = in;
+    }
+
+    boolean isDone() {
+      return _done;
+    }
+
+    private boolean nextChunk() throws IOException {
+      if (_done) {
+        return false;
+      }
+      if (_chunkRemaining == 0) {
+        String line = readLine(_in);
+        if (line == null) {
+          throw new EOFException("unexpected end of chunked body");
+        }
+        int semi = line.indexOf(';');
+        String size = (semi < 0 ? line : line.substring(0, semi)).trim();
+        _chunkRemaining = Long.parseLong(size, 16);
+        if (_chunkRemaining == 0) {
+          //trailer
+          String trailer;
+          while ((trailer = readLine(_in)) != null && trailer.length() > 0) {
+          }
+          _done = true;
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (!nextChunk()) {
+        return -1;
+      }
+      int c = _in.read();
+      if (c == -1) {
+        throw new EOFException("unexpected end of chunked body");
+      }
+      if (--_chunkRemaining == 0) {
+        readCRLF();
+      }
+      return c;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (!nextChunk()) {
+        return -1;
+      }
+      int n = _in.read(b, off, (int) Math.min(len, _chunkRemaining));
+      if (n == -1) {
+        throw new EOFException("unexpected end of chunked body");
+      }
+      _chunkRemaining = _chunkRemaining - n;
+      if (_chunkRemaining == 0) {
+        readCRLF();
+      }
+      return n;
+    }
+
+    private void readCRLF() throws IOException {
+      int cr = _in.read();
+      int lf = _in.read();
+      if (cr != CRLF[0] || lf != CRLF[1]) {
+        throw new IOException("malformed chunked body");
+      }
+    }
+  }
+
+  /**
+   * ÿwrite(byte[],int,int)һchunk,ӦԼ,д
+   */
+  /**
+   * д볬ʱ׳BodyTooLargeExceptionĻ
+   */
+  private static class BoundedOutputStream extends ByteArrayOutputStream {
+    private final int _limit;
+
+    BoundedOutputStream(int limit) {
+      super(Math.min(limit, 1024));
+      _limit = limit;
+    }
+
+    @Override
+    public synchronized void write(int b) {
+      if (count + 1 > _limit) {
+        throw new BodyTooLargeException();
+      }
+      super.write(b);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+      if (count + len > _limit) {
+        throw new BodyTooLargeException();
+      }
+      super.write(b, off, len);
+    }
+  }
+
+  private static class BodyTooLargeException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public synchronized Throwable fillInStackTrace() { //ֻжд,Ҫջ
+      return this;
+    }
+  }
+
+  static class ChunkedOutputStream extends OutputStream {
+    private final OutputStream _out;
+    private final byte[] _one = new byte[1];
+
+    ChunkedOutputStream(OutputStream out) {
+      _out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      _one[0] = (byte) b;
+      write(_one, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return; //Ϊ0chunkʾ,д
+      }
+      _out.write(Integer.toHexString(len).getBytes("ISO-8859-1"));
+      _out.write(CRLF);
+      _out.write(b, off, len);
+      _out.write(CRLF);
+    }
+
+    void finish() throws IOException {
+      _out.write('0');
+      _out.write(CRLF);
+      _out.write(CRLF);
+    }
+  }
+}
@@ -0,0 +1,30 @@
+package org.hazelcast.server.persistence;
+
+/**
+ * SolrHttpTransportJMXӿ,۲ӵĸ
+ */
+public interface SolrHttpTransportMBean {
+  long getRequests();
+
+  long getFailedRequests();
+
+  long getConnectionsCreated();
+
+  long getConnectionsReused();
+
+  long getConnectionsClosed();
+
+  long getConnectionsExpired();
+
+  long getStaleRetries();
+
+  double getReuseRate();
+
+  int getIdleConnections();
+
+  int getLeasedConnections();
+
+  int getMaxConnectionsPerHost();
+
+  void closeIdleConnections();
+}
@@ -0,0 +1,161 @@
+package org.hazelcast.server.persistence;
+
+import org.wjw.efjson.JsonObject;
+
+/**
+ * MapkeySolrĵid֮ת(idFormat):
+ * <ul>
+ * <li>legacy - mapName:{"C":"S","V":"key"},ǰİ汾һģһ(ȱʡ)
+ * <li>compact - mapName:1һַټkey: 1Skey(String),1L123(Long),1I123(Integer),1J:json()
+ * </ul>
+ * compactʽ1ǰ汾,Ժĸʽʱһ汾,ϵidܽ.decode()idԶʶʽ,
+ * ָʽidܶ;load()idĵ,ѾݵMapܸidFormat,Ҳԭĵ.
+ */
+public class SolrIdCodec {
+  public static final String LEGACY = "legacy";
+  public static final String COMPACT = "compact";
+
+  private static final char V1 = '1';
+  private static final char T_STRING = 'S';
+  private static final char T_LONG = 'L';
+  private static final char T_INT = 'I';
+  private static final char T_JSON = 'J';
+
+  private static final String LEGACY_STRING = "{\"C\":\"S\",\"V\":\"";
+
+  private final String _prefix; //mapName:
+  private final boolean _compact;
+
+  public SolrIdCodec(String mapName, String format) {
+    _prefix = mapName + ":";
+    if (format == null || format.trim().length() == 0 || format.trim().equalsIgnoreCase(LEGACY)) {
+      _compact = false;
+    } else if (format.trim().equalsIgnoreCase(COMPACT)) {
+      _compact = true;
+    } else {
+      throw new IllegalArgumentException("unknown " + SolrTools.ID_FORMAT + ":" + format);
+    }
+  }
+
+  public boolean isCompact() {
+    return _compact;
+  }
+
+  public String encode(Object key) {
+    return _compact ? encodeCompact(key) : encodeLegacy(key);
+  }
+
+  /**
+   * legacycompactʽid
+   */
+  public Object decode(String id) throws Exception {
+    int start = _prefix.length();
+    if (id.length() > start + 1 && id.charAt(start) == V1) {
+      return decodeV1(id, start + 2, id.charAt(start + 1));
+    }
+    return decodeLegacy(id, start);
+  }
+
+  private String encodeCompact(Object key) {
+    if (key instanceof String) {
+      String s = (String) key;
+      return new StringBuilder(_prefix.length() + 2 + s.length()).append(_prefix).append(V1).append(T_STRING).append(s).toString();
+    } else if (key instanceof Long) {
+      return new StringBuilder(_prefix.length() + 22).append(_prefix).append(V1).append(T_LONG).append(((Long) key).longValue()).toString();
+    } else if (key instanceof Integer) {
+      return new StringBuilder(_prefix.length() + 13).append(_prefix).append(V1).append(T_INT).append(((Integer) key).intValue()).toString();
+    } else {
+      String json = JsonObject.toJson(key);
+      return new StringBuilder(_prefix.length() + 64 + json.length()).append(_prefix).append(V1).append(T_JSON)
+          .append(key.getClass().getName()).append(':').append(json).toString();
+    }
+  }
+
+  /**
+   * ǰJsonObject.encode()Ľͬ,ǲȹJsonObject
+   */
+  private String encodeLegacy(Object key) {
+    StringBuilder sb;
+    if (key instanceof String) {
+      String s = (String) key;
+      sb = new StringBuilder(_prefix.length() + 20 + s.length());
+      sb.append(_prefix).append("{\"C\":\"S\",\"V\":");
+      SolrJsonCodec.writeString(sb, s);
+    } else {
+      String json = JsonObject.toJson(key);
+      sb = new StringBuilder(_prefix.length() + 80 + json.length());
+      sb.append(_prefix).append("{\"C\":");
+      SolrJsonCodec.writeString(sb, key.getClass().getName());
+      sb.append(",\"V\":");
+      SolrJsonCodec.writeString(sb, json);
+    }
+    return sb.append('}').toString();
+  }
+
+  private Object decodeV1(String id, int start, char type) throws Exception {
+    switch (type) {
+    case T_STRING:
+      return id.substring(start);
+    case T_LONG:
+      return Long.valueOf(parseLong(id, start, Long.MIN_VALUE));
+    case T_INT:
+      return Integer.valueOf((int) parseLong(id, start, Integer.MIN_VALUE));
+    case T_JSON:
+      int colon = id.indexOf(':', start);
+      if (colon < 0) {
+        throw new IllegalArgumentException("bad solr id:" + id);
+      }
+      return JsonObject.fromJson(id.substring(colon + 1), SolrJsonCodec.classForName(id.substring(start, colon)));
+    default:
+      throw new IllegalArgumentException("bad solr id:" + id);
+    }
+  }
+
+  private Object decodeLegacy(String id, int start) throws Exception {
+    //Stringkeyûתַʱֱӽȡ,ýJSON
+    if (id.startsWith(LEGACY_STRING, start) && id.endsWith("\"}") && id.indexOf('\\', start) < 0) {
+      int end = id.length() - 2;
+      if (end >= start + LEGACY_STRING.length()) {
+        return id.substring(start + LEGACY_STRING.length(), end);
+      }
+    }
+
+    JsonObject jsonKey = new JsonObject(id.substring(start));
+    if (jsonKey.getString("C").equalsIgnoreCase("S")) {
+      return jsonKey.getString("V");
+    } else {
+      return JsonObject.fromJson(jsonKey.getString("V"), SolrJsonCodec.classForName(jsonKey.getString("C")));
+    }
+  }
+
+  /**
+   * ȡӴ,ֱӴidʮ,min͵Сֵ(Long.MIN_VALUEInteger.MIN_VALUE)
+   */
+  private static long parseLong(String id, int start, long min) {
+    int i = start;
+    int end = id.length();
+    boolean negative = false;
+    if (i < end && id.charAt(i) == '-') {
+      negative = true;
+      i++;
+    }
+    if (i >= end) {
+      throw new NumberFormatException("bad solr id:" + id);
+    }
+    long limit = negative ? min : min + 1;
+    long result = 0; //ۼ,Long.parseLong()һ,СֵҲ
+    long multmin = limit / 10;
+    for (; i < end; i++) {
+      int digit = id.charAt(i) - '0';
+      if (digit < 0 || digit > 9 || result < multmin) {
+        throw new NumberFormatException("bad solr id:" + id);
+      }
+      result = result * 10;
+      if (result < limit + digit) {
+        throw new NumberFormatException("bad solr id:" + id);
+      }
+      result = result - digit;
+    }
+    return negative ? result : -result;
+  }
+}
@@ -0,0 +1,78 @@
+package org.hazelcast.server.persistence;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * HZ_D_sidJSON.ֵıֱJsonObject.toJson()/fromJson(),
+ * EasyFastJsonֻһObjectMapper,JacksonѾ໺л,ֻClass.forName()Ľ.
+ */
+public class SolrJsonCodec {
+  private static final ConcurrentMap<String, Class<?>> _classes = new ConcurrentHashMap<String, Class<?>>();
+
+  private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+  private SolrJsonCodec() {
+  }
+
+  /**
+   * Class.forName()
+   */
+  public static Class<?> classForName(String className) throws ClassNotFoundException {
+    Class<?> cls = _classes.get(className);
+    if (cls == null) {
+      cls = Class.forName(className);
+      _classes.put(className, cls);
+    }
+    return cls;
+  }
+
+  /**
+   * sдɴŵJSONַ,תJsonObject.toJson()ͬ,ƴidʱȹJsonObject
+   */
+  static void writeString(StringBuilder sb, String s) {
+    sb.append('"');
+    int start = 0;
+    while (start < s.length()) { //ҪתĲθ
+      char c = s.charAt(start);
+      if (c < 0x20 || c == '"' || c == '\\') {
+        break;
+      }
+      start++;
+    }
+    sb.append(s, 0, start);
+    for (int i = start; i < s.length(); i++) {
+      char c = s.charAt(i);
+      switch (c) {
+      case '"':
+        sb.append("\\\"");
+        break;
+      case '\\':
+        sb.append("\\\\");
+        break;
+      case '\n':
+        sb.append("\\n");
+        break;
+      case '\r':
+        sb.append("\\r");
+        break;
+      case '\t':
+        sb.append("\\t");
+        break;
+      case '\b':
+        sb.append("\\b");
+        break;
+      case '\f':
+        sb.append("\\f");
+        break;
+      default:
+        if (c < 0x20) { //Jacksonһôд16
+          sb.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+        } else {
+          sb.append(c);
+        }
+      }
+    }
+    sb.append('"');
+  }
+}
@@ -0,0 +1,381 @@
+package org.hazelcast.server.persistence;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.wjw.efjson.JsonObject;
+
+/**
+ * ʽJSON,ֱӴHTTPӦﰴUTF-8,ȰӦַ.
+ * ַ嶼Ǵӳ,黹.
+ * ָDocHandlerʱ,response.docs(Լrealtime getصdoc)ĵ߽handler,
+ * ᱣڷصĽ,docsǿ.
+ */
+public class SolrJsonReader {
+  static final int BUFFER_SIZE = 8192;
+  private static final int MAX_POOLED_BUFFERS = 64;
+
+  private static final ConcurrentLinkedQueue<byte[]> _bytePool = new ConcurrentLinkedQueue<byte[]>();
+  private static final ConcurrentLinkedQueue<char[]> _charPool = new ConcurrentLinkedQueue<char[]>();
+
+  /**
+   * ĵĻص
+   */
+  public interface DocHandler {
+    void onDoc(JsonObject doc) throws Exception;
+  }
+
+  private final InputStream _in;
+  private final DocHandler _handler;
+  private byte[] _buf;
+  private int _pos = 0;
+  private int _limit = 0;
+  private char[] _pooledChars;
+  private char[] _chars;
+
+  private SolrJsonReader(InputStream in, DocHandler handler) {
+    _in = in;
+    _handler = handler;
+    _buf = _bytePool.poll();
+    if (_buf == null) {
+      _buf = new byte[BUFFER_SIZE];
+    }
+    _pooledChars = _charPool.poll();
+    if (_pooledChars == null) {
+      _pooledChars = new char[BUFFER_SIZE];
+    }
+    _chars = _pooledChars;
+  }
+
+  /**
+   * һJSON,һֱ
+   *
+   * @param handler
+   *          - ΪnullʱĵڷصĽ
+   */
+  public static JsonObject parse(InputStream in, DocHandler handler) throws IOException {
+    SolrJsonReader reader = new SolrJsonReader(in, handler);
+    try {
+      return reader.readRoot();
+    } finally {
+      reader.release();
+    }
+  }
+
+  private void release() {
+    if (_bytePool.size() < MAX_POOLED_BUFFERS) {
+      _bytePool.offer(_buf);
+      _charPool.offer(_pooledChars);
+    }
+    _buf = null;
+    _pooledChars = null;
+    _chars = null;
+  }
+
+  private JsonObject readRoot() throws IOException {
+    if (skipWhitespace() != '{') {
+      throw new IOException("JSON object expected");
+    }
+    _pos++;
+    Map<String, Object> root = readObject(1);
+
+    //ʣµĿհ׶,ӲܷŻس
+    if (skipWhitespace() != -1) {
+      throw new IOException("unexpected content after JSON object");
+    }
+    return new JsonObject(root);
+  }
+
+  private Map<String, Object> readObject(int depth) throws IOException {
+    Map<String, Object> map = new LinkedHashMap<String, Object>();
+    int c = skipWhitespace();
+    if (c == '}') {
+      _pos++;
+      return map;
+    }
+    while (true) {
+      if (c != '"') {
+        throw new IOException("field name expected");
+      }
+      _pos++;
+      String key = readString();
+      if (skipWhitespace() != ':') {
+        throw new IOException("':' expected");
+      }
+      _pos++;
+
+      c = skipWhitespace();
+      if (_handler != null && depth == 2 && c == '[' && key.equals("docs")) {
+        _pos++;
+        streamDocs();
+        map.put(key, new ArrayList<Object>(0));
+      } else if (_handler != null && depth == 1 && c == '{' && key.equals("doc")) {
+        _pos++;
+        deliver(readObject(depth + 1));
+        map.put(key, null);
+      } else {
+        map.put(key, readValue(depth));
+      }
+
+      c = skipWhitespace();
+      _pos++;
+      if (c == '}') {
+        return map;
+      }
+      if (c != ',') {
+        throw new IOException("',' or '}' expected");
+      }
+      c = skipWhitespace();
+    }
+  }
+
+  private void streamDocs() throws IOException {
+    int c = skipWhitespace();
+    if (c == ']') {
+      _pos++;
+      return;
+    }
+    while (true) {
+      if (c != '{') {
+        throw new IOException("doc object expected");
+      }
+      _pos++;
+      deliver(readObject(3));
+
+      c = skipWhitespace();
+      _pos++;
+      if (c == ']') {
+        return;
+      }
+      if (c != ',') {
+        throw new IOException("',' or ']' expected");
+      }
+      c = skipWhitespace();
+    }
+  }
+
+  private void deliver(Map<String, Object> doc) throws IOException {
+    try {
+      _handler.onDoc(new JsonObject(doc));
+    } catch (IOException e) {
+      throw e;
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IOException(e);
+    }
+  }
+
+  private List<Object> readArray(int depth) throws IOException {
+    List<Object> list = new ArrayList<Object>();
+    int c = skipWhitespace();
+    if (c == ']') {
+      _pos++;
+      return list;
+    }
+    while (true) {
+      list.add(readValue(depth));
+
+      c = skipWhitespace();
+      _pos++;
+      if (c == ']') {
+        return list;
+      }
+      if (c != ',') {
+        throw new IOException("',' or ']' expected");
+      }
+    }
+  }
+
+  private Object readValue(int depth) throws IOException {
+    int c = skipWhitespace();
+    switch (c) {
+      case '{':
+        _pos++;
+        return readObject(depth + 1);
+      case '[':
+        _pos++;
+        return readArray(depth + 1);
+      case '"':
+        _pos++;
+        return readString();
+      case 't':
+        expectLiteral("true");
+        return Boolean.TRUE;
+      case 'f':
+        expectLiteral("false");
+        return Boolean.FALSE;
+      case 'n':
+        expectLiteral("null");
+        return null;
+      case -1:
+        throw new EOFException("unexpected end of JSON");
+      default:
+        return readNumber();
+    }
+  }
+
+  private void expectLiteral(String literal) throws IOException {
+    for (int i = 0; i < literal.length(); i++) {
+      if (read() != literal.charAt(i)) {
+        throw new IOException("'" + literal + "' expected");
+      }
+    }
+  }
+
+  private Number readNumber() throws IOException {
+    int len = 0;
+    boolean integral = true;
+    int c;
+    while ((c = peek()) != -1) {
+      if ((c >= '0' && c <= '9') || c == '-' || c == '+') {
+        //
+      } else if (c == '.' || c == 'e' || c == 'E') {
+        integral = false;
+      } else {
+        break;
+      }
+      _pos++;
+      if (len == _chars.length) {
+        growChars();
+      }
+      _chars[len++] = (char) c;
+    }
+    if (len == 0) {
+      throw new IOException("unexpected character '" + (char) c + "'");
+    }
+
+    String text = new String(_chars, 0, len);
+    if (!integral) {
+      return Double.valueOf(text);
+    }
+    long value;
+    try {
+      value = Long.parseLong(text);
+    } catch (NumberFormatException e) { //longķΧ
+      return Double.valueOf(text);
+    }
+    if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+      return Integer.valueOf((int) value);
+    }
+    return Long.valueOf(value);
+  }
+
+  /**
+   * һַ,ͷ'"'Ѿ
+   */
+  private String readString() throws IOException {
+    int len = 0;
+    while (true) {
+      int b = read();
+      if (b == '"') {
+        break;
+      }
+      if (b == -1) {
+        throw new EOFException("unterminated string");
+      }
+      if (len + 2 > _chars.length) {
+        growChars();
+      }
+
+      if (b < 0x80) {
+        _chars[len++] = b == '\\' ? readEscape() : (char) b;
+      } else if ((b & 0xE0) == 0xC0) {
+        _chars[len++] = (char) (((b & 0x1F) << 6) | readContinuation());
+      } else if ((b & 0xF0) == 0xE0) {
+        _chars[len++] = (char) (((b & 0x0F) << 12) | (readContinuation() << 6) | readContinuation());
+      } else if ((b & 0xF8) == 0xF0) {
+        int cp = ((b & 0x07) << 18) | (readContinuation() << 12) | (readContinuation() << 6) | readContinuation();
+        _chars[len++] = (char) ((cp >>> 10) + 0xD7C0); //λ
+        _chars[len++] = (char) ((cp & 0x3FF) + 0xDC00); //λ
+      } else {
+        throw new IOException("malformed UTF-8");
+      }
+    }
+    return new String(_chars, 0, len);
+  }
+
+  private int readContinuation() throws IOException {
+    int b = read();
+    if ((b & 0xC0) != 0x80) {
+      throw new IOException("malformed UTF-8");
+    }
+    return b & 0x3F;
+  }
+
+  private char readEscape() throws IOException {
+    int c = read();
+    switch (c) {
+      case '"':
+      case '\\':
+      case '/':
+        return (char) c;
+      case 'b':
+        return '\b';
+      case 'f':
+        return '\f';
+      case 'n':
+        return '\n';
+      case 'r':
+        return '\r';
+      case 't':
+        return '\t';
+      case 'u':
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+          int digit = Character.digit(read(), 16);
+          if (digit < 0) {
+            throw new IOException("malformed \\u escape");
+          }
+          value = (value << 4) | digit;
+        }
+        return (char) value;
+      default:
+        throw new IOException("malformed escape");
+    }
+  }
+
+  private void growChars() {
+    char[] bigger = new char[_chars.length * 2];
+    System.arraycopy(_chars, 0, bigger, 0, _chars.length);
+    _chars = bigger; //ݺ鲻س,ֻBUFFER_SIZEС
+  }
+
+  private int skipWhitespace() throws IOException {
+    int c;
+    while ((c = peek()) == ' ' || c == '\n' || c == '\r' || c == '\t') {
+      _pos++;
+    }
+    return c;
+  }
+
+  private int peek() throws IOException {
+    if (_pos == _limit && !fill()) {
+      return -1;
+    }
+    return _buf[_pos] & 0xFF;
+  }
+
+  private int read() throws IOException {
+    if (_pos == _limit && !fill()) {
+      return -1;
+    }
+    return _buf[_pos++] & 0xFF;
+  }
+
+  private boolean fill() throws IOException {
+    int n = _in.read(_buf, 0, _buf.length);
+    if (n <= 0) {
+      return false;
+    }
+    _pos = 0;
+    _limit = n;
+    return true;
+  }
+}
@@ -0,0 +1,233 @@
+package org.hazelcast.server.persistence;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.wjw.efjson.JsonArray;
+import org.wjw.efjson.JsonObject;
+
+/**
+ * ʽJSON,JsonObject/JsonArrayUTF-8ֱӱ뵽,
+ * encode()ַתbyte[].ռõڴֻһӳĻ.
+ */
+public class SolrJsonWriter {
+  static final int BUFFER_SIZE = 8192;
+  private static final int MAX_POOLED_BUFFERS = 64;
+
+  private static final ConcurrentLinkedQueue<byte[]> _bufferPool = new ConcurrentLinkedQueue<byte[]>();
+
+  private static final byte[] HEX = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
+
+  private final OutputStream _out;
+  private byte[] _buf;
+  private int _pos = 0;
+
+  private SolrJsonWriter(OutputStream out) {
+    _out = out;
+    _buf = _bufferPool.poll();
+    if (_buf == null) {
+      _buf = new byte[BUFFER_SIZE];
+    }
+  }
+
+  /**
+   * valueJSONдout,valueJsonObject,JsonArray,Map,List,String,Number,Booleannull
+   */
+  public static void write(Object value, OutputStream out) throws IOException {
+    SolrJsonWriter writer = new SolrJsonWriter(out);
+    try {
+      writer.writeValue(value);
+      writer.flushBuffer();
+    } finally {
+      writer.release();
+    }
+  }
+
+  /**
+   * һvalueBodyWriter
+   */
+  public static SolrHttpTransport.BodyWriter bodyWriter(final Object value) {
+    return new SolrHttpTransport.BodyWriter() {
+      @Override
+      public void writeTo(OutputStream out) throws IOException {
+        write(value, out);
+      }
+    };
+  }
+
+  /**
+   * Ԫ,дʱŵget,ԪرͿԶ,ҪȰڴ
+   */
+  public interface ElementSource {
+    int size();
+
+    Object get(int index) throws IOException;
+  }
+
+  /**
+   * һsourceԪJSONBodyWriter
+   */
+  public static SolrHttpTransport.BodyWriter arrayWriter(final ElementSource source) {
+    return new SolrHttpTransport.BodyWriter() {
+      @Override
+      public void writeTo(OutputStream out) throws IOException {
+        SolrJsonWriter writer = new SolrJsonWriter(out);
+        try {
+          writer.writeByte('[');
+          for (int i = 0; i < source.size(); i++) {
+            if (i > 0) {
+              writer.writeByte(',');
+            }
+            writer.writeValue(source.get(i));
+          }
+          writer.writeByte(']');
+          writer.flushBuffer();
+        } finally {
+          writer.release();
+        }
+      }
+    };
+  }
+
+  private void release() {
+    if (_bufferPool.size() < MAX_POOLED_BUFFERS) {
+      _bufferPool.offer(_buf);
+    }
+    _buf = null;
+  }
+
+  @SuppressWarnings("unchecked")
+  private void writeValue(Object value) throws IOException {
+    if (value == null) {
+      writeAscii("null");
+    } else if (value instanceof String) {
+      writeString((String) value);
+    } else if (value instanceof JsonObject) {
+      writeObject((JsonObject) value);
+    } else if (value instanceof JsonArray) {
+      writeArray((JsonArray) value);
+    } else if (value instanceof Map) {
+      writeObject(new JsonObject((Map<String, Object>) value));
+    } else if (value instanceof List) {
+      writeArray(new JsonArray((List<Object>) value));
+    } else if (value instanceof Number || value instanceof Boolean) {
+      writeAscii(value.toString());
+    } else if (value instanceof byte[]) {
+      writeString(Base64.encodeBytes((byte[]) value));
+    } else {
+      throw new IOException("unsupported JSON value:" + value.getClass().getName());
+    }
+  }
+
+  private void writeObject(JsonObject obj) throws IOException {
+    writeByte('{');
+    boolean first = true;
+    for (String field : obj.getFieldNames()) {
+      if (!first) {
+        writeByte(',');
+      }
+      first = false;
+      writeString(field);
+      writeByte(':');
+      writeValue(obj.getValue(field));
+    }
+    writeByte('}');
+  }
+
+  private void writeArray(JsonArray array) throws IOException {
+    writeByte('[');
+    for (int i = 0; i < array.size(); i++) {
+      if (i > 0) {
+        writeByte(',');
+      }
+      writeValue(array.get(i));
+    }
+    writeByte(']');
+  }
+
+  private void writeString(String str) throws IOException {
+    writeByte('"');
+    int len = str.length();
+    for (int i = 0; i < len; i++) {
+      char c = str.charAt(i);
+      if (_pos + 6 > _buf.length) {
+        flushBuffer();
+      }
+
+      if (c < 0x80) {
+        if (c == '"' || c == '\\') {
+          _buf[_pos++] = '\\';
+          _buf[_pos++] = (byte) c;
+        } else if (c < 0x20) {
+          writeControl(c);
+        } else {
+          _buf[_pos++] = (byte) c;
+        }
+      } else if (c < 0x800) {
+        _buf[_pos++] = (byte) (0xC0 | (c >> 6));
+        _buf[_pos++] = (byte) (0x80 | (c & 0x3F));
+      } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(str.charAt(i + 1))) {
+        int cp = Character.toCodePoint(c, str.charAt(++i));
+        _buf[_pos++] = (byte) (0xF0 | (cp >> 18));
+        _buf[_pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+        _buf[_pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+        _buf[_pos++] = (byte) (0x80 | (cp & 0x3F));
+      } else {
+        _buf[_pos++] = (byte) (0xE0 | (c >> 12));
+        _buf[_pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        _buf[_pos++] = (byte) (0x80 | (c & 0x3F));
+      }
+    }
+    writeByte('"');
+  }
+
+  private void writeControl(char c) {
+    _buf[_pos++] = '\\';
+    switch (c) {
+      case '\b':
+        _buf[_pos++] = 'b';
+        break;
+      case '\f':
+        _buf[_pos++] = 'f';
+        break;
+      case '\n':
+        _buf[_pos++] = 'n';
+        break;
+      case '\r':
+        _buf[_pos++] = 'r';
+        break;
+      case '\t':
+        _buf[_pos++] = 't';
+        break;
+      default:
+        _buf[_pos++] = 'u';
+        _buf[_pos++] = '0';
+        _buf[_pos++] = '0';
+        _buf[_pos++] = HEX[c >> 4];
+        _buf[_pos++] = HEX[c & 0xF];
+    }
+  }
+
+  private void writeAscii(String str) throws IOException {
+    for (int i = 0; i < str.length(); i++) {
+      writeByte(str.charAt(i));
+    }
+  }
+
+  private void writeByte(int b) throws IOException {
+    if (_pos == _buf.length) {
+      flushBuffer();
+    }
+    _buf[_pos++] = (byte) b;
+  }
+
+  private void flushBuffer() throws IOException {
+    if (_pos > 0) {
+      _out.write(_buf, 0, _pos);
+      _pos = 0;
+    }
+  }
+}
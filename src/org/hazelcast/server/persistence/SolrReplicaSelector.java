@@ -0,0 +1,215 @@
+package org.hazelcast.server.persistence;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ӳٺʹѡSolr.
+ * ÿάһӳٵEWMAһʵEWMA,ѡʱ÷(ӳ*ͷ*ڽе)͵active.
+ * ֻûactiveĸʱŻrecoveringĸ,ѾSolrCircuitBreaker۶ϵĸſ.
+ * бһɱĿ,Ⱥ״̬仯ʱ滻,ѡʱҪ.
+ */
+public class SolrReplicaSelector {
+  static final double ALPHA = 0.3; //EWMAƽϵ,ԽԽ
+  static final long DECAY_NANOS = 10 * 1000 * 1000 * 1000L; //һʱûбѡеĸ,ͳֵʱ䳣˥,лᱻ̽
+  static final long MIN_LATENCY_NANOS = 1000 * 1000L; //ӳٵ,ʱӳΪ0ĸռ
+  static final double ERROR_PENALTY = 20; //Ϊ1ʱŴı
+  static final double OPEN_CIRCUIT_SCORE = 1e18; //Ѿ۶ϵĸĸӷ
+
+  private static final ThreadLocal<Random> _random = new ThreadLocal<Random>() {
+    @Override
+    protected Random initialValue() {
+      return new Random();
+    }
+  };
+
+  /**
+   * һԼͳֵ.ͳֵڲʱʧ,ӰѡĽ
+   */
+  public static class Endpoint {
+    private final String _url;
+    private final boolean _recovering;
+    private volatile double _ewmaLatency; //
+    private volatile double _ewmaErrors; //01
+    private volatile long _lastNanos;
+    private final AtomicInteger _inflight = new AtomicInteger();
+
+    Endpoint(String url, boolean recovering, Endpoint previous) {
+      _url = url;
+      _recovering = recovering;
+      if (previous != null) { //Ⱥ״̬仯ʱԭͳֵ
+        _ewmaLatency = previous._ewmaLatency;
+        _ewmaErrors = previous._ewmaErrors;
+        _lastNanos = previous._lastNanos;
+      } else {
+        _lastNanos = System.nanoTime();
+      }
+    }
+
+    public String getUrl() {
+      return _url;
+    }
+
+    public boolean isRecovering() {
+      return _recovering;
+    }
+
+    /**
+     * ʼǰ,ؿʼʱ
+     */
+    public long begin() {
+      _inflight.incrementAndGet();
+      return System.nanoTime();
+    }
+
+    public void success(long start) {
+      long now = System.nanoTime();
+      _inflight.decrementAndGet();
+      double decay = decay(now);
+      _ewmaLatency = (_ewmaLatency * decay) * (1 - ALPHA) + (now - start) * ALPHA;
+      _ewmaErrors = (_ewmaErrors * decay) * (1 - ALPHA);
+      _lastNanos = now;
+      SolrCircuitBreaker.getInstance().onSuccess(_url);
+    }
+
+    /**
+     * ȡ(ԳǸ),ͳ,۶̽Ͱ̽Ļó
+     */
+    public void cancel() {
+      _inflight.decrementAndGet();
+      SolrCircuitBreaker.getInstance().onCancel(_url);
+    }
+
+    public void failure(long start, Exception e) {
+      long now = System.nanoTime();
+      _inflight.decrementAndGet();
+      double decay = decay(now);
+      _ewmaLatency = Math.max(_ewmaLatency * decay, now - start); //ʧܵӳ
+      _ewmaErrors = (_ewmaErrors * decay) * (1 - ALPHA) + ALPHA;
+      _lastNanos = now;
+      SolrCircuitBreaker.getInstance().onFailure(_url, e);
+    }
+
+    private double decay(long now) {
+      return Math.exp(-(double) (now - _lastNanos) / DECAY_NANOS);
+    }
+
+    double score(long now) {
+      double decay = decay(now);
+      return (_ewmaLatency * decay + MIN_LATENCY_NANOS) * (1 + ERROR_PENALTY * _ewmaErrors * decay) * (1 + _inflight.get());
+    }
+
+    @Override
+    public String toString() {
+      return _url + (_recovering ? "(recovering)" : "") + ":latency=" + (long) (_ewmaLatency / 1000) + "us:errors=" + _ewmaErrors;
+    }
+  }
+
+  /**
+   * ɱĸб
+   */
+  private static class Snapshot {
+    final Endpoint[] _all;
+    final Endpoint[] _candidates; //activeĸʱֻactive
+
+    Snapshot(Endpoint[] all) {
+      _all = all;
+      List<Endpoint> active = new ArrayList<Endpoint>(all.length);
+      for (Endpoint endpoint : all) {
+        if (!endpoint._recovering) {
+          active.add(endpoint);
+        }
+      }
+      _candidates = active.size() > 0 ? active.toArray(new Endpoint[active.size()]) : all;
+    }
+  }
+
+  private volatile Snapshot _snapshot = new Snapshot(new Endpoint[0]);
+
+  /**
+   * µĸб滻е,URLͬĸͳֵ
+   *
+   * @param urls
+   *          - URLǷrecoveringӳ
+   */
+  public void update(Map<String, Boolean> urls) {
+    Map<String, Endpoint> previous = new HashMap<String, Endpoint>();
+    for (Endpoint endpoint : _snapshot._all) {
+      previous.put(endpoint._url, endpoint);
+    }
+
+    Endpoint[] all = new Endpoint[urls.size()];
+    int i = 0;
+    for (Entry<String, Boolean> entry : urls.entrySet()) {
+      all[i++] = new Endpoint(entry.getKey(), entry.getValue().booleanValue(), previous.get(entry.getKey()));
+    }
+    _snapshot = new Snapshot(all);
+  }
+
+  /**
+   * ĸ,ԵĴ
+   */
+  public int size() {
+    return _snapshot._all.length;
+  }
+
+  /**
+   * ѡһ,ûиʱnull
+   */
+  public Endpoint select() {
+    return select(null);
+  }
+
+  /**
+   * ѡһexcludeĸ,ûʱnull.ڶԳһ
+   */
+  public Endpoint select(Endpoint exclude) {
+    Endpoint[] candidates = _snapshot._candidates;
+    if (exclude != null && candidates.length <= 1) {
+      candidates = _snapshot._all; //activeֻһʱ,recoveringĸԳ
+    }
+    if (candidates.length <= 1 && exclude == null) {
+      return candidates.length == 0 ? null : candidates[0];
+    }
+
+    //,ֱӱȽкѡķ.λÿʼȽ,ͬʱѡͬһ.
+    //Ѿ۶ϵĸ,ֻȫ۶ʱŻѡ(߻Ϊ۶ֱʧ,õȳʱ)
+    SolrCircuitBreaker breaker = SolrCircuitBreaker.getInstance();
+    int offset = _random.get().nextInt(candidates.length);
+    long now = System.nanoTime();
+    Endpoint best = null;
+    double bestScore = Double.MAX_VALUE;
+    for (int i = 0; i < candidates.length; i++) {
+      Endpoint endpoint = candidates[(offset + i) % candidates.length];
+      if (endpoint == exclude) {
+        continue;
+      }
+      double score = endpoint.score(now);
+      if (!breaker.isCallable(endpoint._url)) {
+        score = score + OPEN_CIRCUIT_SCORE;
+      }
+      if (score < bestScore) {
+        best = endpoint;
+        bestScore = score;
+      }
+    }
+    return best;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (Endpoint endpoint : _snapshot._all) {
+      if (sb.length() > 0) {
+        sb.append(", ");
+      }
+      sb.append(endpoint);
+    }
+    return "[" + sb + "]";
+  }
+}
@@ -1,16 +1,12 @@
 package org.hazelcast.server.persistence;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.net.URLEncoder;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.wjw.efjson.JsonArray;
 import org.wjw.efjson.JsonObject;
@@ -21,6 +17,13 @@ public abstract class SolrTools {
   static final SafeSimpleDateFormat solrDateFormat = new SafeSimpleDateFormat(LOGDateFormatPattern);
 
   static final int PAGE_SIZE = 100;
+  static final int DEFAULT_BATCH_SIZE = 500; //storeAllʱÿupdateȱʡĵ
+  static final int MAX_BATCH_BYTES = 4 * 1024 * 1024; //storeAllʱÿupdateĽֽ
+  static final int DEFAULT_LOAD_BATCH_SIZE = 100; //loadAllʱÿrealtime getȱʡid
+  static final int DEFAULT_KEYS_PAGE_SIZE = 1000; //loadAllKeysʱÿҳĳʼĵ,ֻȡid,ԱPAGE_SIZEö
+  static final int MAX_KEYS_PAGE_SIZE = 20000; //loadAllKeysӦҳСʱ
+  static final long KEYS_PAGE_TARGET_MILLIS = 1000; //loadAllKeysÿҳĿʱ
+  static final int PARTITION_GROUP_SIZE = 32; //ڵloadAllKeysʱÿѯpartition
 
   public static final String SOLR_SERVER_URLS = "solrServerUrls";
   public static final String CORE_NAME = "coreName";
@@ -28,6 +31,41 @@ public abstract class SolrTools {
   public static final String READ_TIMEOUT = "readTimeout";
   public static final String LOAD_ALL = "loadAll";
   public static final String DELETE_ON_EVICT = "deleteOnEvict";
+  public static final String BATCH_SIZE = "batchSize";
+  public static final String LOAD_BATCH_SIZE = "loadBatchSize";
+  public static final String MAX_CONNECTIONS_PER_HOST = "maxConnectionsPerHost";
+  public static final String CONNECTION_IDLE_TIMEOUT = "connectionIdleTimeout";
+  public static final String CONNECTION_MAX_LIFETIME = "connectionMaxLifetime";
+  public static final String ASYNC_THREADS = "asyncThreads";
+  public static final String KEYS_PAGE_SIZE = "keysPageSize";
+  public static final String USE_EXPORT = "useExport";
+  public static final String MAX_INITIAL_KEYS = "maxInitialKeys"; //ÿڵloadAllKeys෵صkey,0ʾ
+  public static final String WRITE_BEHIND = "writeBehind";
+  public static final String WRITE_BEHIND_MAX_ENTRIES = "writeBehindMaxEntries";
+  public static final String WRITE_BEHIND_FLUSH_SIZE = "writeBehindFlushSize";
+  public static final String WRITE_BEHIND_FLUSH_DELAY = "writeBehindFlushDelay"; //
+  public static final String OPERATION_TIMEOUT = "operationTimeout"; //һβԵʱ()
+  public static final String CIRCUIT_FAILURE_THRESHOLD = "circuitFailureThreshold";
+  public static final String CIRCUIT_OPEN_TIME = "circuitOpenTime"; //
+  public static final String RETRY_BACKOFF = "retryBackoff"; //
+  public static final String HEDGED_READS = "hedgedReads";
+  public static final String HEDGE_DELAY = "hedgeDelay"; //,0ʾù۲쵽p95
+  public static final String HEDGE_BUDGET = "hedgeBudget"; //Գռgetİٷֱ
+  public static final String HEDGE_THREADS = "hedgeThreads"; //Գ̳߳ص߳
+  public static final String TOPOLOGY_REFRESH_INTERVAL = "topologyRefreshInterval"; //鼯Ⱥ״̬ļ()
+  public static final String BLOOM_FILTER = "bloomFilter";
+  public static final String BLOOM_FILTER_EXPECTED_KEYS = "bloomFilterExpectedKeys";
+  public static final String BLOOM_FILTER_FPP = "bloomFilterFpp"; //BloomĿ
+  public static final String COMMIT_POLICY = "commitPolicy"; //none, commitWithin, softCommit
+  public static final String COMMIT_WITHIN = "commitWithin"; //
+  public static final String SOFT_COMMIT_INTERVAL = "softCommitInterval"; //
+  public static final String SKIP_UNCHANGED = "skipUnchanged";
+  public static final String DIGEST_MAX_ENTRIES = "digestMaxEntries"; //skipUnchangedʱౣժҪ
+  public static final String EXPIRY_SWEEP_INTERVAL = "expirySweepInterval"; //̨ɾĵļ()
+  public static final String EXPIRY_EVICT_MAX_KEYS = "expiryEvictMaxKeys"; //Ƕٸػȴkey
+  public static final String PER_ENTRY_TTL = "perEntryTtl"; //Ѳ֧:store()ʱòputʱָTTL,ֻӡ
+  public static final String VALUE_CODEC = "valueCodec"; //valueı:json,hazelcastԶȫ
+  public static final String ID_FORMAT = "idFormat"; //MapkeySolridʽ:legacycompact
 
   static final String F_ID = "id";
   static final String F_VERSION = "_version_";
@@ -38,6 +76,18 @@ public abstract class SolrTools {
   static final String F_HZ_CTIME = "HZ_T_dt";
   static final String F_HZ_CLASS = "HZ_C_s";
   static final String F_HZ_DATA = "HZ_V_s";
+  //<dynamicField name="*_i"  type="int"    indexed="true"  stored="true"/>
+  static final String F_HZ_PARTITION = "HZ_P_i"; //Hazelcastpartition id
+  //<dynamicField name="*_l"  type="long"    indexed="true"  stored="true"/>
+  static final String F_HZ_EXPIRE = "HZ_E_l"; //ԵĹʱ(),Solr˹˺ɾڵĵ
+  //<dynamicField name="*_bin"  type="binary"  indexed="false"  stored="true"/>
+  static final String F_HZ_BINARY = "HZ_V_bin"; //valueCodec=hazelcastʱBase64value
+
+  //@wjw_note: useExport=trueʱ/exportҪflsortֶζdocValues,schema.xmlҪ:
+  //<field name="id" type="string" indexed="true" stored="true" required="true" docValues="true"/>
+  //<dynamicField name="*_dt"  type="date"    indexed="true"  stored="true" docValues="true"/>
+  //<dynamicField name="*_l"  type="long"    indexed="true"  stored="true" docValues="true"/>
+  static final String KEY_FIELDS = F_ID + "," + F_HZ_CTIME + "," + F_HZ_EXPIRE; //loadAllKeysֻҪֶ
 
   private SolrTools() {
     //
@@ -49,7 +99,6 @@ public abstract class SolrTools {
         .replaceAll("\\s", "_"); // white space as underscores
   }
 
-  @SuppressWarnings("unchecked")
   //صĸʽ:[
   //  {"state":"active","base_url":"http://192.168.0.143:8983/solr","core":"collection1","node_name":"192.168.0.143:8983_solr","leader":"true"}
   //  ,{"state":"active","base_url":"http://192.168.0.147:8983/solr","core":"collection1","node_name":"192.168.0.147:8983_solr"}
@@ -79,25 +128,11 @@ public abstract class SolrTools {
       }
 
       try {
-        String bodyText = doGetProcess(clusterstate, connectTimeout, readTimeout, null, null);
-
-        JsonObject jsonBody = new JsonObject(bodyText);
+        JsonObject jsonBody = doGetProcess(clusterstate, connectTimeout, readTimeout, null, null);
         String data = jsonBody.getObject("znode").getString("data");
         JsonObject jsonData = new JsonObject(data);
 
-        JsonObject shards = jsonData.getObject(coreName).getObject("shards");
-        int size = shards.size();
-        result = new JsonArray();
-        for (int j = 0; j < size; j++) {
-          JsonObject jsonShared = shards.getObject("shard" + (j + 1));
-          JsonObject replicas = jsonShared.getObject("replicas");
-
-          Map<String, Object> nodes = replicas.toMap();
-          for (Object node : nodes.values()) {
-            JsonObject jsonNode = new JsonObject((Map<String, Object>) node);
-            result.addObject(jsonNode);
-          }
-        }
+        result = getReplicas(jsonData.getObject(coreName).getObject("shards"), null);
 
         break;
       } catch (Exception e) {
@@ -109,6 +144,58 @@ public abstract class SolrTools {
     return result;
   }
 
+  /**
+   * Collections APICLUSTERSTATUSȡһcollection״̬,Ӧ"cluster":
+   * {"collections":{coreName:{"shards":{...},"znodeVersion":N}},"live_nodes":[...]}.
+   * /zookeeper?path=/clusterstate.jsonznodeVersionlive_nodes,ֻһURL,ʧʱ׳쳣ɵ߻һ
+   */
+  public static JsonObject getClusterStatus(String solrServer, String coreName, int connectTimeout, int readTimeout) throws IOException {
+    String clusterstatus;
+    if (solrServer.endsWith("/")) {
+      clusterstatus = solrServer + "admin/collections?action=CLUSTERSTATUS&wt=json&collection=" + URLEncoder.encode(coreName, UTF_8);
+    } else {
+      clusterstatus = solrServer + "/admin/collections?action=CLUSTERSTATUS&wt=json&collection=" + URLEncoder.encode(coreName, UTF_8);
+    }
+
+    JsonObject jsonBody = doGetProcess(clusterstatus, connectTimeout, readTimeout, null, null);
+    JsonObject cluster = jsonBody.getObject("cluster");
+    if (cluster == null) {
+      throw new IOException("no cluster in CLUSTERSTATUS response:" + clusterstatus);
+    }
+    return cluster;
+  }
+
+  /**
+   * collection"shards"չgetClusterState()ʽĸ.
+   * liveNodesΪnullʱ,node_nameĸ״̬ĳdown:ڵ崻ZooKeeperĸ״̬ҪOverseer,live_nodes̱仯
+   */
+  @SuppressWarnings("unchecked")
+  public static JsonArray getReplicas(JsonObject shards, Set<String> liveNodes) {
+    JsonArray result = new JsonArray();
+    for (String shardName : shards.getFieldNames()) { //split֮shardֲһshard1..N
+      JsonObject jsonShared = shards.getObject(shardName);
+      JsonObject replicas = jsonShared.getObject("replicas");
+
+      Map<String, Object> nodes = replicas.toMap();
+      for (Object node : nodes.values()) {
+        JsonObject jsonNode = new JsonObject((Map<String, Object>) node);
+        //·ɸʱҪ֪ĸshard,ԼshardhashΧ
+        jsonNode.putString("shard", shardName);
+        if (jsonShared.getString("range") != null) {
+          jsonNode.putString("range", jsonShared.getString("range"));
+        }
+        if (jsonShared.getString("state") != null) {
+          jsonNode.putString("shard_state", jsonShared.getString("state"));
+        }
+        if (liveNodes != null && !liveNodes.contains(jsonNode.getString("node_name"))) {
+          jsonNode.putString("state", "down");
+        }
+        result.addObject(jsonNode);
+      }
+    }
+    return result;
+  }
+
   /**
    * SolrصĶ,״̬
    * 
@@ -121,23 +208,89 @@ public abstract class SolrTools {
 
   public static JsonObject updateDoc(String urlUpdate, int connectTimeout, int readTimeout, JsonObject doc)
       throws IOException {
-    JsonObject solrResponse = new JsonObject(doPostProcess(urlUpdate, connectTimeout, readTimeout, "[" + doc.encode() + "]", null, null));
+    JsonObject solrResponse = doPostProcess(urlUpdate, connectTimeout, readTimeout, SolrJsonWriter.bodyWriter((new JsonArray()).addObject(doc)), null, null);
+    return solrResponse;
+  }
+
+  /**
+   * һupdateύĵ
+   *
+   * @param docs
+   *          - дĵBodyWriter,ĵдʱ
+   */
+  public static JsonObject updateDocs(String urlUpdate, int connectTimeout, int readTimeout, SolrHttpTransport.BodyWriter docs)
+      throws IOException {
+    JsonObject solrResponse = doPostProcess(urlUpdate, connectTimeout, readTimeout, docs, null, null);
     return solrResponse;
   }
 
   public static JsonObject delDoc(String urlUpdate, int connectTimeout, int readTimeout, JsonObject doc)
       throws IOException {
-    JsonObject solrResponse = new JsonObject(doPostProcess(urlUpdate, connectTimeout, readTimeout, doc.encode(), null, null));
+    JsonObject solrResponse = doPostProcess(urlUpdate, connectTimeout, readTimeout, SolrJsonWriter.bodyWriter(doc), null, null);
     return solrResponse;
   }
 
   public static JsonObject getDoc(String urlGet, int connectTimeout, int readTimeout, String id) throws IOException {
-    JsonObject solrResponse = new JsonObject(doGetProcess(urlGet + URLEncoder.encode(id, UTF_8), connectTimeout, readTimeout, null, null));
+    JsonObject solrResponse = doGetProcess(urlGet + URLEncoder.encode(id, UTF_8), connectTimeout, readTimeout, null, null);
     return solrResponse.getObject("doc");
   }
 
+  /**
+   * һrealtime getȡĵ,idԱPOSTȥ,URL.
+   * 
+   * @param urlGet
+   *          - http://host:port/solr/core/get?id=URL
+   * @return ҵĵ,ڵidڽ
+   */
+  public static JsonArray getDocs(String urlGet, int connectTimeout, int readTimeout, List<String> ids) throws IOException {
+    final JsonArray docs = new JsonArray();
+    getDocs(urlGet, connectTimeout, readTimeout, ids, new SolrJsonReader.DocHandler() {
+      @Override
+      public void onDoc(JsonObject doc) {
+        docs.addObject(doc);
+      }
+    });
+    return docs;
+  }
+
+  /**
+   * getDocsһ,ĵ߽handler,ڴܳ
+   */
+  public static void getDocs(String urlGet, int connectTimeout, int readTimeout, List<String> ids, SolrJsonReader.DocHandler handler) throws IOException {
+    StringBuilder form = new StringBuilder(ids.size() * 64);
+    form.append("wt=json");
+    for (String id : ids) {
+      form.append("&id=").append(URLEncoder.encode(id, UTF_8));
+    }
+
+    //ֻһidʱSolrص{"doc":...},idʱص{"response":{"docs":[...]}},SolrJsonReaderύhandler
+    String urlstr = urlGet.substring(0, urlGet.indexOf('?'));
+    doPostProcess(urlstr, connectTimeout, readTimeout, form.toString(), "application/x-www-form-urlencoded;charset=" + UTF_8, handler, null, null);
+  }
+
   public static JsonObject selectDocs(String urlSelect, int connectTimeout, int readTimeout, String query, int start,
       int pageSize, String cursorMark) throws IOException {
+    return selectDocs(urlSelect, connectTimeout, readTimeout, query, start, pageSize, cursorMark, null, null);
+  }
+
+  /**
+   * selectDocsһ,response.docsĵ߽handler,ؽdocsǿ,
+   * numFoundnextCursorMarkճ.
+   *
+   * @param fl
+   *          - ֻЩֶ,ŷָ,Ϊnullʱȫֶ
+   */
+  public static JsonObject selectDocs(String urlSelect, int connectTimeout, int readTimeout, String query, int start,
+      int pageSize, String cursorMark, String fl, SolrJsonReader.DocHandler handler) throws IOException {
+    return selectDocs(urlSelect, connectTimeout, readTimeout, query, null, start, pageSize, cursorMark, fl, handler);
+  }
+
+  /**
+   * @param fq
+   *          - ˲ѯ,Ϊnullʱ
+   */
+  public static JsonObject selectDocs(String urlSelect, int connectTimeout, int readTimeout, String query, String fq, int start,
+      int pageSize, String cursorMark, String fl, SolrJsonReader.DocHandler handler) throws IOException {
     String httpUrl;
     if (cursorMark == null) {
       httpUrl = urlSelect + "?sort=id+asc&wt=json&q=" + URLEncoder.encode(query, UTF_8) + "&start=" + start + "&rows=" + pageSize;
@@ -146,15 +299,60 @@ public abstract class SolrTools {
     } else {
       httpUrl = urlSelect + "?cursorMark=" + URLEncoder.encode(cursorMark, UTF_8) + "&sort=id+asc&wt=json&q=" + URLEncoder.encode(query, UTF_8) + "&rows=" + pageSize;
     }
-    JsonObject solrResponse = new JsonObject(doGetProcess(httpUrl, connectTimeout, readTimeout, null, null));
+    if (fl != null) {
+      httpUrl = httpUrl + "&fl=" + URLEncoder.encode(fl, UTF_8);
+    }
+    if (fq != null) {
+      httpUrl = httpUrl + "&fq=" + URLEncoder.encode(fq, UTF_8);
+    }
+    JsonObject solrResponse = doGetProcess(httpUrl, connectTimeout, readTimeout, handler, null, null);
 
     return solrResponse;
   }
 
+  /**
+   * /exportһʽƥĵ,÷ҳ.flֶζdocValues
+   *
+   * @param urlExport
+   *          - http://host:port/solr/core/exportURL
+   */
+  public static JsonObject exportDocs(String urlExport, int connectTimeout, int readTimeout, String query, String fl,
+      SolrJsonReader.DocHandler handler) throws IOException {
+    return exportDocs(urlExport, connectTimeout, readTimeout, query, null, fl, handler);
+  }
+
+  /**
+   * @param fq
+   *          - ˲ѯ,Ϊnullʱ
+   */
+  public static JsonObject exportDocs(String urlExport, int connectTimeout, int readTimeout, String query, String fq, String fl,
+      SolrJsonReader.DocHandler handler) throws IOException {
+    String httpUrl = urlExport + "?sort=id+asc&wt=json&q=" + URLEncoder.encode(query, UTF_8) + "&fl=" + URLEncoder.encode(fl, UTF_8);
+    if (fq != null) {
+      httpUrl = httpUrl + "&fq=" + URLEncoder.encode(fq, UTF_8);
+    }
+    JsonObject solrResponse = doGetProcess(httpUrl, connectTimeout, readTimeout, handler, null, null);
+
+    return solrResponse;
+  }
+
+  /**
+   * һҳĺʱloadAllKeysҳС:ĿһϾͷ,һϾͼ
+   */
+  static int adaptPageSize(int pageSize, long elapsedMillis) {
+    if (elapsedMillis < KEYS_PAGE_TARGET_MILLIS / 2) {
+      return Math.min(pageSize * 2, Math.max(pageSize, MAX_KEYS_PAGE_SIZE));
+    }
+    if (elapsedMillis > KEYS_PAGE_TARGET_MILLIS * 2) {
+      return Math.max(pageSize / 2, PAGE_SIZE);
+    }
+    return pageSize;
+  }
+
   public static JsonObject solrCommit(String urlUpdate, int connectTimeout, int readTimeout)
       throws IOException {
     JsonObject doc = new JsonObject("{\"commit\":{\"softCommit\": true}}");
-    JsonObject solrResponse = new JsonObject(doPostProcess(urlUpdate, connectTimeout, readTimeout, doc.encode(), null, null));
+    JsonObject solrResponse = doPostProcess(urlUpdate, connectTimeout, readTimeout, doc.encode(), null, null);
     return solrResponse;
   }
 
@@ -170,59 +368,16 @@ public abstract class SolrTools {
    * @return ķϢ
    * @throws IOException
    */
-  private static String doGetProcess(String urlstr, int connectTimeout, int readTimeout, String user, String pass)
+  private static JsonObject doGetProcess(String urlstr, int connectTimeout, int readTimeout, String user, String pass)
       throws IOException {
-    URL url = new URL(urlstr);
-
-    HttpURLConnection conn = null;
-    BufferedReader reader = null;
-    try {
-      conn = (HttpURLConnection) url.openConnection();
-      conn.setConnectTimeout(connectTimeout);
-      conn.setReadTimeout(readTimeout);
-      conn.setUseCaches(false);
-      conn.setDoOutput(false);
-      conn.setDoInput(true);
-      conn.setRequestProperty("Accept", "*/*");
-      if (user != null && pass != null) {
-        conn.setRequestProperty("Authorization", "Basic "
-            + new String(Base64.encodeBytes((user + ":" + pass).getBytes(UTF_8)))); //ҪBASIC֤
-      }
-
-      conn.connect();
-
-      if (conn.getResponseCode() == HttpURLConnection.HTTP_OK) {
-        reader = new BufferedReader(new InputStreamReader(conn.getInputStream(), UTF_8));
-      } else {
-        reader = new BufferedReader(new InputStreamReader(conn.getErrorStream(), UTF_8));
-      }
-      String line;
-      StringBuilder result = new StringBuilder();
-
-      int i = 0;
-      while ((line = reader.readLine()) != null) {
-        i++;
-        if (i != 1) {
-          result.append("\n");
-        }
-        result.append(line);
-      }
-      return result.toString();
-    } finally {
-      if (reader != null) {
-        try {
-          reader.close();
-        } catch (IOException ex) {
-        }
-      }
+    return doGetProcess(urlstr, connectTimeout, readTimeout, null, user, pass);
+  }
 
-      if (conn != null) {
-        try {
-          conn.disconnect();
-        } catch (Exception ex) {
-        }
-      }
-    }
+  private static JsonObject doGetProcess(String urlstr, int connectTimeout, int readTimeout, SolrJsonReader.DocHandler handler, String user,
+      String pass)
+      throws IOException {
+    SolrHttpTransport.Response response = SolrHttpTransport.getInstance().execute("GET", urlstr, null, (byte[]) null, basicAuth(user, pass), connectTimeout, readTimeout);
+    return readResponse(response, handler);
   }
 
   /**
@@ -239,74 +394,45 @@ public abstract class SolrTools {
    * @return ķϢ
    * @throws IOException
    */
-  private static String doPostProcess(String urlstr, int connectTimeout, int readTimeout, String data, String user,
+  private static JsonObject doPostProcess(String urlstr, int connectTimeout, int readTimeout, String data, String user,
       String pass)
       throws IOException {
-    URL url = new URL(urlstr);
-
-    HttpURLConnection conn = null;
-    BufferedReader reader = null;
-    OutputStreamWriter writer = null;
-    try {
-      conn = (HttpURLConnection) url.openConnection();
-      conn.setConnectTimeout(connectTimeout);
-      conn.setReadTimeout(readTimeout);
-      conn.setUseCaches(false);
-      conn.setDoOutput(true);
-      conn.setDoInput(true);
-      conn.setRequestProperty("Accept", "*/*");
-      conn.setRequestProperty("Content-Type", "application/json;charset=" + UTF_8);
-      if (user != null && pass != null) {
-        conn.setRequestProperty("Authorization", "Basic "
-            + new String(Base64.encodeBytes((user + ":" + pass).getBytes(UTF_8)))); //ҪBASIC֤
-      }
+    return doPostProcess(urlstr, connectTimeout, readTimeout, data, "application/json;charset=" + UTF_8, null, user, pass);
+  }
 
-      conn.connect();
+  private static JsonObject doPostProcess(String urlstr, int connectTimeout, int readTimeout, String data, String contentType,
+      SolrJsonReader.DocHandler handler, String user, String pass)
+      throws IOException {
+    SolrHttpTransport.Response response = SolrHttpTransport.getInstance().execute("POST", urlstr, contentType, data.getBytes(UTF_8), basicAuth(user, pass), connectTimeout, readTimeout);
+    return readResponse(response, handler);
+  }
 
-      writer = new OutputStreamWriter(conn.getOutputStream(), UTF_8);
-      writer.write(data);
-      writer.flush();
+  /**
+   * ΪʽJSONPOST,Ҫȱַ.chunkedʽ
+   */
+  private static JsonObject doPostProcess(String urlstr, int connectTimeout, int readTimeout, SolrHttpTransport.BodyWriter bodyWriter,
+      String user, String pass)
+      throws IOException {
+    SolrHttpTransport.Response response = SolrHttpTransport.getInstance().execute("POST", urlstr, "application/json;charset=" + UTF_8, bodyWriter, basicAuth(user, pass), connectTimeout, readTimeout);
+    return readResponse(response, null);
+  }
 
-      if (conn.getResponseCode() == HttpURLConnection.HTTP_OK) {
-        reader = new BufferedReader(new InputStreamReader(conn.getInputStream(), UTF_8));
-      } else {
-        reader = new BufferedReader(new InputStreamReader(conn.getErrorStream(), UTF_8));
-      }
-      String line;
-      StringBuilder result = new StringBuilder();
-
-      int i = 0;
-      while ((line = reader.readLine()) != null) {
-        i++;
-        if (i != 1) {
-          result.append("\n");
-        }
-        result.append(line);
-      }
-      return result.toString();
+  /**
+   * ֱӴӦJSON,ȶַ.Ӧûжʱ(handler쳣),close()ص
+   */
+  private static JsonObject readResponse(SolrHttpTransport.Response response, SolrJsonReader.DocHandler handler) throws IOException {
+    try {
+      return SolrJsonReader.parse(response.getBody(), handler);
     } finally {
-      if (reader != null) {
-        try {
-          reader.close();
-        } catch (IOException ex) {
-        }
-      }
-
-      if (writer != null) {
-        try {
-          writer.close();
-        } catch (IOException ex) {
-        }
-      }
-
-      if (conn != null) {
-        try {
-          conn.disconnect();
-        } catch (Exception ex) {
-        }
-      }
+      response.close();
     }
+  }
 
+  private static String basicAuth(String user, String pass) throws IOException {
+    if (user != null && pass != null) {
+      return "Basic " + new String(Base64.encodeBytes((user + ":" + pass).getBytes(UTF_8))); //ҪBASIC֤
+    }
+    return null;
   }
 
   public static class WrapperEntry<K, V> {
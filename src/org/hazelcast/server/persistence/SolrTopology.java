@@ -0,0 +1,295 @@
+package org.hazelcast.server.persistence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import org.wjw.efjson.JsonArray;
+import org.wjw.efjson.JsonObject;
+
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.logging.Logger;
+
+/**
+ * һSolrȺ(solrServerUrls, coreName),ȺStoreһʵ.
+ * һػ߳ÿtopologyRefreshIntervalCLUSTERSTATUS鼯Ⱥ״̬,
+ * znodeVersionlive_nodesûʱֻȽһַ;仯ʱµĲɱ,StoreÿʱȡǰĿ.
+ * Solr֧CLUSTERSTATUSʱ˻صÿLEGACY_REFRESH_INTERVALȡһ/clusterstate.json.
+ * ʵü,һStore release()Ժֹͣˢ.
+ */
+public class SolrTopology implements Runnable {
+  private static final ILogger _logger = Logger.getLogger(SolrTopology.class.getName());
+
+  static final long DEFAULT_REFRESH_INTERVAL = 1000L; //CLUSTERSTATUS鼯Ⱥ״̬ȱʡ()
+  static final int LEGACY_REFRESH_INTERVAL = 30; //ȡ/clusterstate.jsonļ()
+
+  private static final Map<String, SolrTopology> _topologies = new HashMap<String, SolrTopology>();
+
+  //мȺõˢ߳,ػ߳,ֹJVM˳
+  private static final ScheduledExecutorService _scheduleSync = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, "SolrTopology-refresh");
+      t.setDaemon(true);
+      return t;
+    }
+  });
+
+  /**
+   * Ⱥ״̬һɱ
+   */
+  public static class Snapshot {
+    final String _state; //жϼȺ״̬Ƿ仯
+    final List<String> _urlUpdates;
+    final SolrShardRouter _router;
+
+    Snapshot(String state, List<String> urlUpdates, SolrShardRouter router) {
+      _state = state;
+      _urlUpdates = urlUpdates;
+      _router = router;
+    }
+
+    public List<String> getUpdateUrls() {
+      return _urlUpdates;
+    }
+
+    public SolrShardRouter getRouter() {
+      return _router;
+    }
+  }
+
+  private final String _key;
+  private final String _solrServerUrls;
+  private final String[] _servers;
+  private final String _coreName;
+  private final int _connectTimeout;
+  private final int _readTimeout;
+
+  private final SolrReplicaSelector _getSelector = new SolrReplicaSelector(); //realtime getĸ
+  private final SolrReplicaSelector _selectSelector = new SolrReplicaSelector(); //selectĸ
+  private volatile Snapshot _snapshot;
+  private final AtomicInteger _indexPost = new AtomicInteger(-1);
+
+  //ֻˢ߳
+  private int _serverIndex = 0; //ϴCLUSTERSTATUSɹĽڵ,´λ,ͬһ
+  private boolean _legacy = false; //Solr֧CLUSTERSTATUS,/clusterstate.json
+  private long _nextLegacyRefresh = 0;
+
+  private int _refCount = 0; //_topologiesͬ
+  private ScheduledFuture<?> _refreshFuture;
+
+  private SolrTopology(String key, String solrServerUrls, String coreName, int connectTimeout, int readTimeout) {
+    _key = key;
+    _solrServerUrls = solrServerUrls;
+    _servers = solrServerUrls.split(",");
+    Collections.shuffle(Arrays.asList(_servers)); //ͬHazelcastڵӲͬSolrڵȡ״̬
+    _coreName = coreName;
+    _connectTimeout = connectTimeout;
+    _readTimeout = readTimeout;
+  }
+
+  /**
+   * ȡ(solrServerUrls, coreName)Ӧ,ü1.һȡʱͬȡȺ״̬,ʱ׳RuntimeException
+   *
+   * @param refreshInterval
+   *          - 鼯Ⱥ״̬ļ(),ֻеһȡʱЧ
+   */
+  public static SolrTopology acquire(String solrServerUrls, String coreName, int connectTimeout, int readTimeout, long refreshInterval) {
+    String key = solrServerUrls + "|" + coreName;
+    synchronized (_topologies) {
+      SolrTopology topology = _topologies.get(key);
+      if (topology == null) {
+        topology = new SolrTopology(key, solrServerUrls, coreName, connectTimeout, readTimeout);
+        topology.run();
+        if (topology._snapshot == null) {
+          throw new RuntimeException("can not connect Solr Cloud:" + "coreName:" + coreName + ",URLS:" + solrServerUrls);
+        }
+
+        refreshInterval = Math.max(100L, refreshInterval);
+        topology._refreshFuture = _scheduleSync.scheduleWithFixedDelay(topology, refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
+        _topologies.put(key, topology);
+      }
+      topology._refCount++;
+      return topology;
+    }
+  }
+
+  /**
+   * ü1,0ʱֹͣˢ
+   */
+  public void release() {
+    synchronized (_topologies) {
+      if (_refCount <= 0) {
+        return;
+      }
+      _refCount--;
+      if (_refCount == 0) {
+        _refreshFuture.cancel(false);
+        _topologies.remove(_key);
+      }
+    }
+  }
+
+  public Snapshot getSnapshot() {
+    return _snapshot;
+  }
+
+  public SolrReplicaSelector getGetSelector() {
+    return _getSelector;
+  }
+
+  public SolrReplicaSelector getSelectSelector() {
+    return _selectSelector;
+  }
+
+  public int getUpdateUrlCount() {
+    return _snapshot._urlUpdates.size();
+  }
+
+  /**
+   * һԽupdateĸ,Ѿ۶ϵĽڵ
+   */
+  public String nextUpdateUrl() {
+    List<String> urlUpdates = _snapshot._urlUpdates;
+    if (urlUpdates.size() == 1) {
+      return urlUpdates.get(0);
+    }
+
+    SolrCircuitBreaker breaker = SolrCircuitBreaker.getInstance();
+    int index = 0;
+    for (int i = 0; i < urlUpdates.size(); i++) {
+      index = (_indexPost.incrementAndGet() & Integer.MAX_VALUE) % urlUpdates.size();
+      if (breaker.isCallable(urlUpdates.get(index))) {
+        break;
+      }
+    }
+    return urlUpdates.get(index);
+  }
+
+  @Override
+  //ˢSolrȺ״̬Scheduled
+  public void run() {
+    try {
+      long now = System.currentTimeMillis();
+      if (_legacy && now < _nextLegacyRefresh) {
+        return;
+      }
+      if (refreshClusterStatus()) {
+        if (_legacy) {
+          _legacy = false;
+          _logger.log(Level.INFO, "use CLUSTERSTATUS for Solr Cloud Status:" + _key);
+        }
+        return;
+      }
+
+      //CLUSTERSTATUS(Solr 4.8ǰû),˻ص/clusterstate.json
+      JsonArray stateArray = SolrTools.getClusterState(_solrServerUrls, _coreName, _connectTimeout, _readTimeout);
+      if (stateArray == null) {
+        _logger.log(Level.WARNING, "can not connect Solr Cloud:" + "coreName:" + _coreName + ",URLS:" + _solrServerUrls);
+        return;
+      }
+      if (!_legacy) {
+        _legacy = true;
+        _logger.log(Level.INFO, "CLUSTERSTATUS not available, poll clusterstate.json every " + LEGACY_REFRESH_INTERVAL + "s:" + _key);
+      }
+      _nextLegacyRefresh = now + LEGACY_REFRESH_INTERVAL * 1000L;
+      publish(stateArray.encode(), stateArray);
+    } catch (Throwable e) { //쳣ֹʱ
+      _logger.log(Level.WARNING, e.getMessage(), e);
+    }
+  }
+
+  /**
+   * CLUSTERSTATUS鼯Ⱥ״̬,κһڵ㷵״̬ͷtrue.
+   * ״̬znodeVersionlive_nodesʾ,ûб仯ʱչshards,Ҳؽκζ
+   */
+  private boolean refreshClusterStatus() {
+    for (int i = 0; i < _servers.length; i++) {
+      int index = (_serverIndex + i) % _servers.length;
+      JsonObject cluster;
+      try {
+        cluster = SolrTools.getClusterStatus(_servers[index], _coreName, _connectTimeout, _readTimeout);
+      } catch (Exception e) {
+        _logger.log(Level.FINE, "CLUSTERSTATUS failed:" + _servers[index] + ":" + e.getMessage());
+        continue;
+      }
+      _serverIndex = index;
+
+      JsonObject collection = cluster.getObject("collections") == null ? null : cluster.getObject("collections").getObject(_coreName);
+      if (collection == null || collection.getObject("shards") == null) {
+        _logger.log(Level.WARNING, "no collection in CLUSTERSTATUS:" + _coreName + ":" + _servers[index]);
+        continue;
+      }
+
+      //live_nodesź,˳仯״̬仯
+      Set<String> liveNodes = null;
+      JsonArray jLiveNodes = cluster.getArray("live_nodes");
+      if (jLiveNodes != null) {
+        liveNodes = new TreeSet<String>();
+        for (int j = 0; j < jLiveNodes.size(); j++) {
+          liveNodes.add(jLiveNodes.<String> get(j));
+        }
+      }
+      Number version = collection.getNumber("znodeVersion"); //Solr 5ԺÿcollectionԼstate.json
+      if (version == null) {
+        version = cluster.getNumber("znodeVersion");
+      }
+      String state = (version != null ? "znodeVersion=" + version : collection.getObject("shards").encode()) + "|live_nodes=" + liveNodes;
+
+      Snapshot current = _snapshot;
+      if (current == null || !current._state.equals(state)) {
+        publish(state, SolrTools.getReplicas(collection.getObject("shards"), liveNodes));
+      }
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Ⱥ״̬б仯ʱ,ؽб·ɱµĿ
+   *
+   * @param state
+   *          - жϼȺ״̬Ƿ仯ַ
+   */
+  private void publish(String state, JsonArray stateArray) {
+    Snapshot current = _snapshot;
+    if (current != null && current._state.equals(state)) {
+      return;
+    }
+
+    Map<String, Boolean> urlGets = new LinkedHashMap<String, Boolean>();
+    List<String> urlUpdates = new ArrayList<String>(stateArray.size());
+    Map<String, Boolean> urlSelects = new LinkedHashMap<String, Boolean>();
+    for (int i = 0; i < stateArray.size(); i++) {
+      JsonObject jNode = stateArray.<JsonObject> get(i);
+      if (jNode.getString("state").equalsIgnoreCase("active") || jNode.getString("state").equalsIgnoreCase("recovering")) {
+        Boolean recovering = Boolean.valueOf(jNode.getString("state").equalsIgnoreCase("recovering"));
+        urlGets.put(jNode.getString("base_url") + "/" + _coreName + "/get?id=", recovering);
+        urlUpdates.add(jNode.getString("base_url") + "/" + _coreName + "/update");
+        urlSelects.put(jNode.getString("base_url") + "/" + _coreName + "/select", recovering);
+      }
+    }
+
+    _getSelector.update(urlGets);
+    _selectSelector.update(urlSelects);
+    _snapshot = new Snapshot(state, Collections.unmodifiableList(urlUpdates), SolrShardRouter.build(stateArray, _coreName));
+    if (current != null) {
+      _logger.log(Level.INFO, "Solr Cloud Status changed:" + _key + ":" + stateArray.encodePrettily());
+    } else {
+      _logger.log(Level.INFO, "Solr Cloud Status:" + stateArray.encodePrettily());
+    }
+  }
+}
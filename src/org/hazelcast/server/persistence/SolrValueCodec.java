@@ -0,0 +1,135 @@
+package org.hazelcast.server.persistence;
+
+import java.util.Iterator;
+
+import org.wjw.efjson.JsonObject;
+
+import com.hazelcast.config.SerializationConfig;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.nio.BufferObjectDataOutput;
+import com.hazelcast.nio.serialization.SerializationService;
+import com.hazelcast.nio.serialization.SerializationServiceBuilder;
+
+/**
+ * MapQueuevalue뵽Solrĵ(valueCodec):
+ * <ul>
+ * <li>json - JsonObject.toJson()ԺHZ_V_s(ȱʡ,ǰһ)
+ * <li>hazelcast - HazelcastԼл(õԶл)ɶ,Base64ԺHZ_V_bin
+ * <li> - Զıȫ,ҪһHazelcastInstancepublic캯
+ * </ul>
+ * õֱ,decode()ĵĸֶ,Ի˱Ժԭĵܶ.
+ */
+public class SolrValueCodec {
+  public static final String JSON = "json";
+  public static final String HAZELCAST = "hazelcast";
+
+  /**
+   * Hazelcastлı
+   */
+  public static class HazelcastCodec extends SolrValueCodec {
+    public HazelcastCodec(HazelcastInstance hazelcastInstance) {
+      super(hazelcastInstance);
+    }
+
+    @Override
+    public void encode(Object value, JsonObject doc) throws Exception {
+      doc.putString(SolrTools.F_HZ_CLASS, value.getClass().getName());
+      doc.putString(SolrTools.F_HZ_BINARY, Base64.encodeBytes(serialize(value), Base64.DONT_BREAK_LINES));
+    }
+  }
+
+  private final HazelcastInstance _hazelcastInstance; //Ϊnull(QueueStoreò),ʱJVMѾʵл
+  private volatile SerializationService _serializationService; //һƵĵʱ
+
+  public SolrValueCodec(HazelcastInstance hazelcastInstance) {
+    _hazelcastInstance = hazelcastInstance;
+  }
+
+  /**
+   * @param name
+   *          - json,hazelcastԶȫ
+   */
+  public static SolrValueCodec newCodec(String name, HazelcastInstance hazelcastInstance) throws Exception {
+    if (name == null || name.trim().length() == 0 || name.trim().equalsIgnoreCase(JSON)) {
+      return new SolrValueCodec(hazelcastInstance);
+    } else if (name.trim().equalsIgnoreCase(HAZELCAST)) {
+      return new HazelcastCodec(hazelcastInstance);
+    } else {
+      return (SolrValueCodec) Class.forName(name.trim()).getConstructor(HazelcastInstance.class).newInstance(hazelcastInstance);
+    }
+  }
+
+  /**
+   * value뵽doc,HZ_C_sԼHZ_V_sHZ_V_bin
+   */
+  public void encode(Object value, JsonObject doc) throws Exception {
+    doc.putString(SolrTools.F_HZ_CLASS, value.getClass().getName());
+    doc.putString(SolrTools.F_HZ_DATA, JsonObject.toJson(value));
+  }
+
+  /**
+   * docֶν,jsonhazelcastĵܶ
+   */
+  public Object decode(JsonObject doc) throws Exception {
+    String sBinary = doc.getString(SolrTools.F_HZ_BINARY);
+    if (sBinary != null) {
+      return deserialize(sBinary);
+    }
+
+    String sClass = doc.getString(SolrTools.F_HZ_CLASS);
+    String sValue = doc.getString(SolrTools.F_HZ_DATA);
+    return JsonObject.fromJson(sValue, SolrJsonCodec.classForName(sClass));
+  }
+
+  /**
+   * Ժvalue,ժҪ͹ĴС
+   */
+  public static String payload(JsonObject doc) {
+    String sBinary = doc.getString(SolrTools.F_HZ_BINARY);
+    return sBinary != null ? sBinary : doc.getString(SolrTools.F_HZ_DATA);
+  }
+
+  protected byte[] serialize(Object value) throws Exception {
+    BufferObjectDataOutput out = getSerializationService().createObjectDataOutput(256);
+    try {
+      out.writeObject(value);
+      return out.toByteArray();
+    } finally {
+      out.close();
+    }
+  }
+
+  protected Object deserialize(String sBinary) throws Exception {
+    byte[] bytes = sBinary.getBytes("US-ASCII");
+    bytes = Base64.decode(bytes, 0, bytes.length); //decode(String),0x1f8bͷݵgzipѹ
+    if (bytes == null) {
+      throw new IllegalArgumentException("bad base64 value:" + SolrTools.F_HZ_BINARY);
+    }
+    return getSerializationService().createObjectDataInput(bytes).readObject();
+  }
+
+  private SerializationService getSerializationService() {
+    SerializationService serializationService = _serializationService;
+    if (serializationService == null) {
+      synchronized (this) {
+        if (_serializationService == null) {
+          HazelcastInstance hazelcastInstance = _hazelcastInstance;
+          if (hazelcastInstance == null) {
+            Iterator<HazelcastInstance> it = Hazelcast.getAllHazelcastInstances().iterator();
+            hazelcastInstance = it.hasNext() ? it.next() : null;
+          }
+          SerializationServiceBuilder builder = new SerializationServiceBuilder();
+          if (hazelcastInstance != null) {
+            builder.setConfig(hazelcastInstance.getConfig().getSerializationConfig()).setClassLoader(hazelcastInstance.getConfig().getClassLoader()).setHazelcastInstance(hazelcastInstance);
+          } else {
+            builder.setConfig(new SerializationConfig());
+          }
+          _serializationService = builder.build();
+        }
+        serializationService = _serializationService;
+      }
+    }
+    return serializationService;
+  }
+}
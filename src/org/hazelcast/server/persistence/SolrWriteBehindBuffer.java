@@ -0,0 +1,403 @@
+package org.hazelcast.server.persistence;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.logging.Logger;
+
+/**
+ * StoreԼ첽write-behind.
+ * ͬһkeyĶдڻϲһ,۵flushSizeϵд볬flushDelayɵ߳дSolr.
+ * Ժkeyд,ֱflushڳռ.дһԼдʧܷŻҲmaxEntries.
+ * ֻһflush߳,һдȡһ,ͬһkeyдǰ˳򵽴Solr.
+ */
+class SolrWriteBehindBuffer<K, V> implements Runnable {
+  private static final ILogger _logger = Logger.getLogger(SolrWriteBehindBuffer.class.getName());
+
+  static final int DEFAULT_MAX_ENTRIES = 10000; //key
+  static final int DEFAULT_FLUSH_SIZE = 500; //۵ôkeyflush
+  static final long DEFAULT_FLUSH_DELAY = 1000L; //ϵд볬ʱ()flush
+
+  /**
+   * дSolrĻص
+   */
+  interface Flusher<K, V> {
+    /**
+     * ʧʱmapֻûдɹkey,׳쳣.expirationTimesдʱõĹʱ,0ʾ
+     */
+    void storeAll(Map<K, V> map, Map<K, Long> expirationTimes) throws Exception;
+
+    void deleteAll(Collection<K> keys) throws Exception;
+  }
+
+  /**
+   * һд,_deletedΪtrueʾɾ
+   */
+  static class Pending<V> {
+    final long _since; //keyһν뻺ʱ
+    V _value;
+    boolean _deleted;
+    long _expirationTime; //һдʱõĹʱ,0ʾ
+
+    Pending(long since) {
+      _since = since;
+    }
+
+    boolean isDeleted() {
+      return _deleted;
+    }
+
+    V getValue() {
+      return _value;
+    }
+  }
+
+  private final String _name;
+  private final Flusher<K, V> _flusher;
+  private final int _maxEntries;
+  private final int _flushSize;
+  private final long _flushDelay;
+
+  private final ReentrantLock _lock = new ReentrantLock();
+  private final Condition _flushNeeded = _lock.newCondition();
+  private final Condition _notFull = _lock.newCondition();
+  private final Condition _flushDone = _lock.newCondition();
+  private LinkedHashMap<K, Pending<V>> _pending = new LinkedHashMap<K, Pending<V>>();
+  private Map<K, Pending<V>> _flushing = null; //дSolrһ,д֮ǰload()ҲҪܿ
+  private long _generation = 0; //clear()һμ1,clear()֮ǰȡһдʧҲٷŻػ
+  private boolean _running = true;
+  private final Thread _thread;
+
+  private final AtomicLong _writes = new AtomicLong();
+  private final AtomicLong _coalesced = new AtomicLong();
+  private final AtomicLong _flushed = new AtomicLong();
+
+  SolrWriteBehindBuffer(String name, Flusher<K, V> flusher, int maxEntries, int flushSize, long flushDelay) {
+    _name = name;
+    _flusher = flusher;
+    _maxEntries = Math.max(1, maxEntries);
+    _flushSize = Math.max(1, Math.min(flushSize, _maxEntries));
+    _flushDelay = Math.max(1, flushDelay);
+
+    _thread = new Thread(this, "SolrWriteBehind-" + name);
+    _thread.setDaemon(true);
+    _thread.start();
+  }
+
+  public void store(K key, V value, long expirationTime) throws InterruptedException {
+    _lock.lock();
+    try {
+      put(key, value, false, expirationTime);
+    } finally {
+      _lock.unlock();
+    }
+  }
+
+  public void storeAll(Map<K, V> map, long expirationTime) throws InterruptedException {
+    _lock.lock();
+    try {
+      for (Entry<K, V> entry : map.entrySet()) {
+        put(entry.getKey(), entry.getValue(), false, expirationTime);
+      }
+    } finally {
+      _lock.unlock();
+    }
+  }
+
+  public void delete(K key) throws InterruptedException {
+    _lock.lock();
+    try {
+      put(key, null, true, 0);
+    } finally {
+      _lock.unlock();
+    }
+  }
+
+  public void deleteAll(Collection<K> keys) throws InterruptedException {
+    _lock.lock();
+    try {
+      for (K key : keys) {
+        put(key, null, true, 0);
+      }
+    } finally {
+      _lock.unlock();
+    }
+  }
+
+  /**
+   * ڳ_lockʱ.˲keyʱȴ
+   */
+  private void put(K key, V value, boolean deleted, long expirationTime) throws InterruptedException {
+    _writes.incrementAndGet();
+    Pending<V> pending = _pending.get(key);
+    if (pending == null) {
+      while (unwrittenCount() >= _maxEntries && _running) {
+        _flushNeeded.signal();
+        _notFull.await();
+      }
+      pending = new Pending<V>(System.currentTimeMillis());
+      _pending.put(key, pending);
+      if (_pending.size() >= _flushSize) {
+        _flushNeeded.signal();
+      }
+    } else {
+      _coalesced.incrementAndGet();
+    }
+    pending._value = value;
+    pending._deleted = deleted;
+    pending._expirationTime = expirationTime;
+  }
+
+  /**
+   * keyڻﻹûдSolrдһ,û򷵻null
+   */
+  public Pending<V> get(K key) {
+    _lock.lock();
+    try {
+      Pending<V> pending = _pending.get(key);
+      if (pending == null && _flushing != null) {
+        pending = _flushing.get(key);
+      }
+      if (pending == null) {
+        return null;
+      }
+      Pending<V> copy = new Pending<V>(pending._since);
+      copy._value = pending._value;
+      copy._deleted = pending._deleted;
+      copy._expirationTime = pending._expirationTime;
+      return copy;
+    } finally {
+      _lock.unlock();
+    }
+  }
+
+  /**
+   * ڳ_lockʱ.ûдSolrkey,дһ
+   */
+  private int unwrittenCount() {
+    return _pending.size() + (_flushing == null ? 0 : _flushing.size());
+  }
+
+  /**
+   * лûд,Mapɾʱ.
+   * дһû,дٷ,߽delete-by-queryһ֮󵽴Solr
+   */
+  public void clear() throws InterruptedException {
+    _lock.lock();
+    try {
+      _generation++;
+      _pending.clear();
+      _notFull.signalAll();
+      while (_flushing != null && _thread.isAlive() && !isFlushThread()) {
+        _flushDone.await(_flushDelay, TimeUnit.MILLISECONDS);
+      }
+    } finally {
+      _lock.unlock();
+    }
+  }
+
+  /**
+   * ȴеȫдSolr
+   */
+  public void flush() throws InterruptedException {
+    _lock.lock();
+    try {
+      while ((_pending.size() > 0 || _flushing != null) && _thread.isAlive()) {
+        _flushNeeded.signal();
+        _flushDone.await(_flushDelay, TimeUnit.MILLISECONDS);
+      }
+    } finally {
+      _lock.unlock();
+    }
+  }
+
+  /**
+   * ֹͣflush߳,ʣµдSolr
+   */
+  public void shutdown() {
+    _lock.lock();
+    try {
+      _running = false;
+      _flushNeeded.signal();
+      _notFull.signalAll();
+    } finally {
+      _lock.unlock();
+    }
+    try {
+      _thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * ǰ߳ǲflush߳
+   */
+  private boolean isFlushThread() {
+    return Thread.currentThread() == _thread;
+  }
+
+  @Override
+  public void run() {
+    while (true) {
+      Map<K, Pending<V>> batch;
+      long generation;
+      _lock.lock();
+      try {
+        while (_running && !isFlushDue()) {
+          long wait = _flushDelay;
+          if (_pending.size() > 0) {
+            wait = _flushDelay - (System.currentTimeMillis() - _pending.values().iterator().next()._since);
+          }
+          if (wait > 0) {
+            _flushNeeded.await(wait, TimeUnit.MILLISECONDS);
+          }
+        }
+        if (!_running && _pending.isEmpty()) {
+          _flushDone.signalAll();
+          return;
+        }
+
+        batch = _pending;
+        generation = _generation;
+        _flushing = batch;
+        _pending = new LinkedHashMap<K, Pending<V>>();
+      } catch (InterruptedException e) {
+        return;
+      } finally {
+        _lock.unlock();
+      }
+
+      Map<K, Pending<V>> failed = flushBatch(batch);
+
+      _lock.lock();
+      try {
+        _flushing = null;
+        if (generation == _generation) {
+          requeue(failed);
+        } else { //дĹбclear(),ʧܵҲҪ
+          failed.clear();
+        }
+        _notFull.signalAll();
+        _flushDone.signalAll();
+      } finally {
+        _lock.unlock();
+      }
+
+      if (failed.size() > 0) {
+        if (!_running) { //ڹر,Solrдȥֻܷ
+          _logger.log(Level.SEVERE, "writeBehind:" + _name + ":shutdown with unwritten keys:" + failed.size());
+          return;
+        }
+        try {
+          Thread.sleep(_flushDelay);
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * ڳ_lockʱ
+   */
+  private boolean isFlushDue() {
+    if (_pending.isEmpty()) {
+      return false;
+    }
+    if (_pending.size() >= _flushSize) {
+      return true;
+    }
+    long oldest = _pending.values().iterator().next()._since;
+    return (System.currentTimeMillis() - oldest) >= _flushDelay;
+  }
+
+  /**
+   * һдSolr,ûдɹ
+   */
+  private Map<K, Pending<V>> flushBatch(Map<K, Pending<V>> batch) {
+    Map<K, V> stores = new HashMap<K, V>(batch.size());
+    Map<K, Long> expirationTimes = new HashMap<K, Long>(batch.size());
+    List<K> deletes = new ArrayList<K>();
+    for (Entry<K, Pending<V>> entry : batch.entrySet()) {
+      if (entry.getValue()._deleted) {
+        deletes.add(entry.getKey());
+      } else {
+        stores.put(entry.getKey(), entry.getValue()._value);
+        expirationTimes.put(entry.getKey(), entry.getValue()._expirationTime);
+      }
+    }
+
+    Map<K, Pending<V>> failed = new HashMap<K, Pending<V>>();
+    if (deletes.size() > 0) {
+      try {
+        _flusher.deleteAll(deletes);
+        _flushed.addAndGet(deletes.size());
+      } catch (Exception e) {
+        _logger.log(Level.WARNING, "writeBehind:" + _name + ":deleteAll failed:" + deletes.size() + ":" + e.getMessage(), e);
+        for (K key : deletes) {
+          failed.put(key, batch.get(key));
+        }
+      }
+    }
+    if (stores.size() > 0) {
+      int total = stores.size();
+      try {
+        _flusher.storeAll(stores, expirationTimes);
+        _flushed.addAndGet(total);
+      } catch (Exception e) {
+        _logger.log(Level.WARNING, "writeBehind:" + _name + ":storeAll failed:" + stores.size() + "/" + total + ":" + e.getMessage(), e);
+        _flushed.addAndGet(total - stores.size());
+        for (K key : stores.keySet()) {
+          failed.put(key, batch.get(key));
+        }
+      }
+    }
+    return failed;
+  }
+
+  /**
+   * ڳ_lockʱ.ʧܵдŻػǰ,ڼkeyµд,µΪ׼.
+   * дĹ_pending_flushingmaxEntries,ԷŻԺҲᳬ
+   */
+  private void requeue(Map<K, Pending<V>> failed) {
+    if (failed.isEmpty()) {
+      return;
+    }
+    LinkedHashMap<K, Pending<V>> merged = new LinkedHashMap<K, Pending<V>>(failed);
+    merged.putAll(_pending);
+    _pending = merged;
+  }
+
+  public int getPendingCount() {
+    _lock.lock();
+    try {
+      return _pending.size() + (_flushing == null ? 0 : _flushing.size());
+    } finally {
+      _lock.unlock();
+    }
+  }
+
+  public long getWrites() {
+    return _writes.get();
+  }
+
+  public long getCoalescedWrites() {
+    return _coalesced.get();
+  }
+
+  public long getFlushedWrites() {
+    return _flushed.get();
+  }
+}
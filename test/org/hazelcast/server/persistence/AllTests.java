@@ -0,0 +1,30 @@
+package org.hazelcast.server.persistence;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * persistenceв,ʧʱ1˳.
+ * :java -cp classes:lib/* org.hazelcast.server.persistence.AllTests (classesҪsrctest)
+ */
+public class AllTests {
+  private static final Class<?>[] TESTS = { SolrIdCodecTest.class, SolrJsonCodecTest.class, SolrShardRouterTest.class, SolrBloomFilterTest.class,
+      SolrDigestCacheTest.class, SolrTopologyTest.class,
+      SolrHttpTransportTest.class, SolrCircuitBreakerTest.class };
+
+  public static void main(String[] args) throws Exception {
+    int failed = 0;
+    for (Class<?> test : TESTS) {
+      Method main = test.getMethod("main", String[].class);
+      try {
+        main.invoke(null, (Object) new String[0]);
+      } catch (InvocationTargetException e) {
+        failed++;
+        System.out.println(test.getSimpleName() + " FAILED");
+        e.getCause().printStackTrace(System.out);
+      }
+    }
+    System.out.println((TESTS.length - failed) + "/" + TESTS.length + " tests passed");
+    System.exit(failed == 0 ? 0 : 1);
+  }
+}
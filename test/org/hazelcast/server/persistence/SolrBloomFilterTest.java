@@ -0,0 +1,202 @@
+package org.hazelcast.server.persistence;
+
+import static org.hazelcast.server.persistence.SolrTestSupport.check;
+import static org.hazelcast.server.persistence.SolrTestSupport.checkEquals;
+import static org.hazelcast.server.persistence.SolrTestSupport.waitFor;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SolrBloomFilterTest {
+  private static final int KEYS = 20000;
+
+  public static void main(String[] args) throws Exception {
+    noFalseNegatives();
+    notReadyMeansMaybe();
+    writeByAnotherMemberAfterScan();
+    rebuildWaitsForInflightWrites();
+    System.out.println("SolrBloomFilterTest OK");
+  }
+
+  /**
+   * عĺ֮putidһtrue,ûеidʽӽõfpp
+   */
+  static void noFalseNegatives() throws Exception {
+    final SolrBloomFilter filter = new SolrBloomFilter("bloomTest", KEYS, 0.01, new SolrBloomFilter.Loader() {
+      @Override
+      public void loadIds(SolrBloomFilter target) throws Exception {
+        for (int i = 0; i < KEYS / 2; i++) {
+          target.put("map:loaded" + i);
+        }
+      }
+    });
+    try {
+      filter.rebuild();
+      waitFor(new SolrTestSupport.Condition() {
+        @Override
+        public boolean isTrue() {
+          return filter.isReady();
+        }
+      }, 5000, "bloom filter build");
+
+      for (int i = 0; i < KEYS / 2; i++) {
+        filter.put("map:stored" + i);
+      }
+      for (int i = 0; i < KEYS / 2; i++) {
+        check(filter.mightContain("map:loaded" + i), "false negative for a loaded id");
+        check(filter.mightContain("map:stored" + i), "false negative for a stored id");
+      }
+
+      int falsePositives = 0;
+      for (int i = 0; i < KEYS; i++) {
+        if (filter.mightContain("map:missing" + i)) {
+          falsePositives++;
+        }
+      }
+      check(falsePositives < KEYS * 0.03, "false positive rate too high: " + falsePositives + "/" + KEYS);
+      check(filter.getNegatives() == KEYS - falsePositives, "negatives counter");
+
+      filter.clear();
+      check(!filter.mightContain("map:loaded1"), "id still present after clear()");
+      filter.put("map:loaded1");
+      check(filter.mightContain("map:loaded1"), "false negative after clear()");
+    } finally {
+      filter.close();
+    }
+  }
+
+  /**
+   * һι֮ǰidtrue,ڼputidԺҲ
+   */
+  static void notReadyMeansMaybe() throws Exception {
+    final CountDownLatch loading = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final SolrBloomFilter filter = new SolrBloomFilter("bloomTest2", 1000, 0.01, new SolrBloomFilter.Loader() {
+      @Override
+      public void loadIds(SolrBloomFilter target) throws Exception {
+        loading.countDown();
+        release.await();
+      }
+    });
+    try {
+      check(filter.mightContain("map:anything"), "not ready filter returned false");
+      filter.rebuild();
+      loading.await();
+      filter.put("map:during");
+      check(filter.mightContain("map:other"), "filter returned false while building");
+      release.countDown();
+      waitFor(new SolrTestSupport.Condition() {
+        @Override
+        public boolean isTrue() {
+          return filter.isReady();
+        }
+      }, 5000, "bloom filter build");
+      check(filter.mightContain("map:during"), "id stored while building is missing");
+    } finally {
+      filter.close();
+    }
+  }
+
+  /**
+   * ģSolr:дuncommittedĵύԺܱɨ赽
+   */
+  private static class FakeSolr implements SolrBloomFilter.Loader {
+    final Set<String> _committed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    final Set<String> _uncommitted = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    final AtomicInteger _scans = new AtomicInteger();
+    volatile CountDownLatch _scanning = null; //Ϊnullʱɨ赽һͣ,
+    volatile CountDownLatch _resume = null;
+
+    @Override
+    public void loadIds(SolrBloomFilter target) throws Exception {
+      _committed.addAll(_uncommitted);
+      _uncommitted.removeAll(_committed);
+      _scans.incrementAndGet();
+      for (String id : _committed) {
+        target.put(id);
+      }
+      if (_scanning != null) {
+        _scanning.countDown();
+        _resume.await();
+      }
+    }
+  }
+
+  private static void awaitReady(final SolrBloomFilter filter) throws Exception {
+    waitFor(new SolrTestSupport.Condition() {
+      @Override
+      public boolean isTrue() {
+        return filter.isReady();
+      }
+    }, 5000, "bloom filter build");
+  }
+
+  /**
+   * ĽڵڱڵɨԺдidڵ㲻֪,partitionǨƹԺ(invalidate)©,
+   * ɨڼǨƹpartitionҪɨһ
+   */
+  static void writeByAnotherMemberAfterScan() throws Exception {
+    FakeSolr solr = new FakeSolr();
+    solr._committed.add("map:a");
+    SolrBloomFilter filter = new SolrBloomFilter("bloomTest3", 1000, 0.01, solr);
+    try {
+      filter.rebuild();
+      awaitReady(filter);
+      check(filter.mightContain("map:a"), "false negative for a scanned id");
+
+      solr._uncommitted.add("map:b"); //һڵд,ûύ
+      check(!filter.mightContain("map:b"), "unexpected false positive");
+
+      solr._scanning = new CountDownLatch(1);
+      solr._resume = new CountDownLatch(1);
+      filter.invalidate(0); //bڵpartitionǨƵ˱ڵ
+      check(!filter.isReady(), "filter ready right after invalidate()");
+      check(filter.mightContain("map:b"), "invalidated filter returned false");
+      solr._scanning.await();
+
+      solr._uncommitted.add("map:c"); //ɨԺһڵдc,partitionҲǨƹ
+      solr._scanning = null;
+      filter.invalidate(0);
+      solr._resume.countDown();
+      awaitReady(filter);
+      check(solr._scans.get() >= 3, "no second scan after invalidate() during a scan: " + solr._scans.get());
+      check(filter.mightContain("map:b"), "false negative for an uncommitted id written by another member");
+      check(filter.mightContain("map:c"), "false negative for an id written during the scan");
+    } finally {
+      filter.close();
+    }
+  }
+
+  /**
+   * ؽʼǰputid,дSolrû,ɨ迴,ؽЩдԺύɨ
+   */
+  static void rebuildWaitsForInflightWrites() throws Exception {
+    FakeSolr solr = new FakeSolr();
+    SolrBloomFilter filter = new SolrBloomFilter("bloomTest4", 1000, 0.01, solr);
+    try {
+      filter.rebuild();
+      awaitReady(filter);
+      int scans = solr._scans.get();
+
+      int epoch = filter.beginWrite();
+      filter.put("map:w");
+      filter.invalidate(0);
+      Thread.sleep(200);
+      checkEquals(scans, solr._scans.get(), "scan started before an in-flight write finished");
+      solr._uncommitted.add("map:w"); //дSolr,ûύ
+      filter.endWrite(epoch);
+      awaitReady(filter);
+      check(filter.mightContain("map:w"), "id of an in-flight write lost by the rebuild");
+
+      int next = filter.beginWrite(); //µдᱻһؽļס
+      filter.put("map:x");
+      filter.endWrite(next);
+      check(filter.mightContain("map:x"), "false negative for a stored id");
+    } finally {
+      filter.close();
+    }
+  }
+}
@@ -0,0 +1,35 @@
+package org.hazelcast.server.persistence;
+
+import static org.hazelcast.server.persistence.SolrTestSupport.check;
+import static org.hazelcast.server.persistence.SolrTestSupport.checkEquals;
+
+public class SolrCircuitBreakerTest {
+  public static void main(String[] args) throws Exception {
+    deadlineCapsTimeout();
+    infiniteTimeoutUsesRemaining();
+    System.out.println("SolrCircuitBreakerTest OK");
+  }
+
+  static void deadlineCapsTimeout() throws Exception {
+    SolrCircuitBreaker.Deadline deadline = SolrCircuitBreaker.getInstance().newDeadline(60 * 1000L);
+    checkEquals(500, deadline.timeout(500), "timeout shorter than the deadline");
+    int capped = deadline.timeout(120 * 1000);
+    check(capped > 59 * 1000 && capped <= 60 * 1000, "timeout not capped by the deadline: " + capped);
+
+    SolrCircuitBreaker.Deadline expired = SolrCircuitBreaker.getInstance().newDeadline(-1000L);
+    checkEquals(1, expired.timeout(500), "timeout after the deadline");
+  }
+
+  /**
+   * connectTimeout/readTimeoutΪ0ʾ,ֻܲĽֹʱ
+   */
+  static void infiniteTimeoutUsesRemaining() throws Exception {
+    SolrCircuitBreaker.Deadline deadline = SolrCircuitBreaker.getInstance().newDeadline(60 * 1000L);
+    int timeout = deadline.timeout(0);
+    check(timeout > 59 * 1000 && timeout <= 60 * 1000, "infinite timeout not mapped to the remaining time: " + timeout);
+
+    SolrCircuitBreaker.Deadline far = SolrCircuitBreaker.getInstance().newDeadline(Long.MAX_VALUE / 2);
+    checkEquals(Integer.MAX_VALUE, far.timeout(0), "infinite timeout with a far deadline");
+    checkEquals(Integer.MAX_VALUE, far.timeout(-1), "negative timeout with a far deadline");
+  }
+}
@@ -0,0 +1,76 @@
+package org.hazelcast.server.persistence;
+
+import static org.hazelcast.server.persistence.SolrTestSupport.check;
+import static org.hazelcast.server.persistence.SolrTestSupport.checkEquals;
+
+public class SolrDigestCacheTest {
+  public static void main(String[] args) throws Exception {
+    putContainsRemove();
+    removeKeepsProbeChains();
+    segmentLimitAndClear();
+    hash64();
+    System.out.println("SolrDigestCacheTest OK");
+  }
+
+  static void putContainsRemove() throws Exception {
+    SolrDigestCache cache = new SolrDigestCache(4, 1000);
+    check(!cache.contains(1, 10, 100), "empty cache contains a digest");
+    cache.put(1, 10, 100);
+    check(cache.contains(1, 10, 100), "digest missing after put");
+    check(!cache.contains(1, 10, 101), "different digest matched");
+    check(!cache.contains(2, 10, 100), "digest found in another segment");
+    cache.put(1, 10, 101);
+    check(cache.contains(1, 10, 101), "digest not replaced");
+    checkEquals(1L, cache.size(), "size after replace");
+
+    cache.put(1, 0, 5); //hashΪ0id
+    check(cache.contains(1, 0, 5), "id hash 0 missing");
+    cache.remove(1, 10);
+    check(!cache.contains(1, 10, 101), "digest present after remove");
+    check(cache.contains(1, 0, 5), "remove dropped another id");
+    checkEquals(1L, cache.size(), "size after remove");
+  }
+
+  /**
+   * key̽ʱͻ,ɾһԺһ붼ҵ
+   */
+  static void removeKeepsProbeChains() throws Exception {
+    SolrDigestCache cache = new SolrDigestCache(1, 100000);
+    int n = 20000;
+    for (int i = 1; i <= n; i++) {
+      cache.put(0, i * 7919L, i);
+    }
+    for (int i = 1; i <= n; i += 2) {
+      cache.remove(0, i * 7919L);
+    }
+    for (int i = 1; i <= n; i++) {
+      checkEquals(i % 2 == 0, cache.contains(0, i * 7919L, i), "digest " + i + " after removing odd ids");
+    }
+    checkEquals((long) n / 2, cache.size(), "size after removing half");
+  }
+
+  static void segmentLimitAndClear() throws Exception {
+    SolrDigestCache cache = new SolrDigestCache(2, 64); //ÿ32
+    for (int i = 1; i <= 32; i++) {
+      cache.put(0, i, i);
+      cache.put(1, i, i);
+    }
+    checkEquals(64L, cache.size(), "size when full");
+    cache.put(0, 1000, 1); //˵Ķ
+    check(cache.contains(0, 1000, 1), "new digest missing after overflow");
+    check(!cache.contains(0, 1, 1), "old digest kept after overflow");
+    check(cache.contains(1, 1, 1), "overflow cleared another segment");
+
+    cache.clear(1);
+    check(!cache.contains(1, 2, 2), "digest present after clear(segment)");
+    check(cache.contains(0, 1000, 1), "clear(segment) cleared another segment");
+    cache.clear();
+    checkEquals(0L, cache.size(), "size after clear()");
+  }
+
+  static void hash64() throws Exception {
+    checkEquals(SolrDigestCache.hash64("map:k1", 0), SolrDigestCache.hash64(new StringBuilder("map:k1"), 0), "hash64 of equal strings");
+    check(SolrDigestCache.hash64("map:k1", 0) != SolrDigestCache.hash64("map:k2", 0), "hash64 collision");
+    check(SolrDigestCache.hash64("map:k1", 0) != SolrDigestCache.hash64("map:k1", 1), "hash64 ignores the seed");
+  }
+}
@@ -0,0 +1,151 @@
+package org.hazelcast.server.persistence;
+
+import static org.hazelcast.server.persistence.SolrTestSupport.check;
+import static org.hazelcast.server.persistence.SolrTestSupport.checkEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SolrHttpTransportTest {
+  public static void main(String[] args) throws Exception {
+    configureResizesExistingPools();
+    interimResponseIsSkipped();
+    onlySmallBodiesAreBuffered();
+    System.out.println("SolrHttpTransportTest OK");
+  }
+
+  private static void setMaxConnections(int maxConnections) {
+    Properties properties = new Properties();
+    properties.setProperty(SolrTools.MAX_CONNECTIONS_PER_HOST, String.valueOf(maxConnections));
+    SolrHttpTransport.getInstance().configure(properties);
+  }
+
+  /**
+   * configure()maxConnectionsPerHostԺ,ѾõӳҲµ
+   */
+  static void configureResizesExistingPools() throws Exception {
+    StubSolrServer stub = new StubSolrServer();
+    SolrHttpTransport transport = SolrHttpTransport.getInstance();
+    String url = stub.getBaseUrl() + "/admin/collections?action=CLUSTERSTATUS&wt=json";
+    try {
+      setMaxConnections(1);
+      SolrHttpTransport.Response first = transport.execute("GET", url, null, (byte[]) null, null, 200, 3000);
+      try {
+        transport.execute("GET", url, null, (byte[]) null, null, 200, 3000).close();
+        throw new AssertionError("second connection opened with maxConnectionsPerHost=1");
+      } catch (IOException e) {
+        check(e.getMessage().startsWith("connection pool exhausted"), "unexpected error: " + e.getMessage());
+      }
+
+      setMaxConnections(2);
+      SolrHttpTransport.Response second = transport.execute("GET", url, null, (byte[]) null, null, 200, 3000);
+      checkEquals(200, second.getStatus(), "status after growing the pool");
+      second.readString("UTF-8");
+      first.readString("UTF-8");
+
+      setMaxConnections(1);
+      first = transport.execute("GET", url, null, (byte[]) null, null, 200, 3000); //ÿе
+      try {
+        second = transport.execute("GET", url, null, (byte[]) null, null, 200, 3000);
+        second.close();
+        throw new AssertionError("pool not shrunk to maxConnectionsPerHost=1");
+      } catch (IOException e) {
+        check(e.getMessage().startsWith("connection pool exhausted"), "unexpected error: " + e.getMessage());
+      }
+      first.readString("UTF-8");
+    } finally {
+      setMaxConnections(SolrHttpTransport.DEFAULT_MAX_CONNECTIONS_PER_HOST);
+      transport.closeIdleConnections();
+      stub.stop();
+    }
+  }
+
+  /**
+   * ص100 ContinueܵյӦ,Ӧ,һ
+   */
+  static void interimResponseIsSkipped() throws Exception {
+    final ServerSocket server = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+    final AtomicInteger connections = new AtomicInteger();
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          Socket socket = server.accept();
+          connections.incrementAndGet();
+          InputStream in = socket.getInputStream();
+          OutputStream out = socket.getOutputStream();
+          readRequestHead(in);
+          out.write(("HTTP/1.1 100 Continue\r\n\r\n"
+              + "HTTP/1.1 102 Processing\r\nX-Interim: yes\r\n\r\n"
+              + "HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nfirst").getBytes("ISO-8859-1"));
+          out.flush();
+          readRequestHead(in);
+          out.write("HTTP/1.1 200 OK\r\nContent-Length: 6\r\n\r\nsecond".getBytes("ISO-8859-1"));
+          out.flush();
+          readRequestHead(in); //ȿͻ˹ر
+          socket.close();
+        } catch (IOException e) {
+          //Խʱر
+        }
+      }
+    });
+    thread.setDaemon(true);
+    thread.start();
+
+    SolrHttpTransport transport = SolrHttpTransport.getInstance();
+    String url = "http://127.0.0.1:" + server.getLocalPort() + "/solr/select";
+    try {
+      SolrHttpTransport.Response first = transport.execute("GET", url, null, (byte[]) null, null, 3000, 3000);
+      checkEquals(200, first.getStatus(), "status after interim responses");
+      checkEquals("first", first.readString("UTF-8"), "body after interim responses");
+      SolrHttpTransport.Response second = transport.execute("GET", url, null, (byte[]) null, null, 3000, 3000);
+      checkEquals("second", second.readString("UTF-8"), "body of the next request on the same connection");
+      checkEquals(1, connections.get(), "connections");
+    } finally {
+      transport.closeIdleConnections();
+      server.close();
+    }
+  }
+
+  /**
+   * С建Content-Length,MAX_BUFFERED_BODYĲchunked
+   */
+  static void onlySmallBodiesAreBuffered() throws Exception {
+    byte[] small = SolrHttpTransport.bufferSmallBody(SolrJsonWriter.arrayWriter(strings(1)));
+    check(small != null, "one document not buffered");
+    checkEquals("[\"doc-0000000\"]", new String(small, "UTF-8"), "buffered body");
+
+    int count = SolrHttpTransport.MAX_BUFFERED_BODY / 10;
+    check(SolrHttpTransport.bufferSmallBody(SolrJsonWriter.arrayWriter(strings(count))) == null, "large body buffered");
+    ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+    SolrJsonWriter.arrayWriter(strings(count)).writeTo(streamed);
+    checkEquals(count * 14 + 1, streamed.size(), "streamed body length");
+  }
+
+  private static SolrJsonWriter.ElementSource strings(final int count) {
+    return new SolrJsonWriter.ElementSource() {
+      @Override
+      public int size() {
+        return count;
+      }
+
+      @Override
+      public Object get(int index) {
+        return "doc-" + String.format("%07d", index);
+      }
+    };
+  }
+
+  private static void readRequestHead(InputStream in) throws IOException {
+    String line;
+    while ((line = SolrHttpTransport.readLine(in)) != null && line.length() > 0) {
+    }
+  }
+}
@@ -0,0 +1,113 @@
+package org.hazelcast.server.persistence;
+
+import static org.hazelcast.server.persistence.SolrTestSupport.check;
+import static org.hazelcast.server.persistence.SolrTestSupport.checkEquals;
+
+import org.wjw.efjson.JsonObject;
+
+public class SolrIdCodecTest {
+  private static final String MAP = "map1";
+
+  /**
+   * JSONkey
+   */
+  public static class Key {
+    private String name;
+    private int n;
+
+    public Key() {
+    }
+
+    Key(String name, int n) {
+      this.name = name;
+      this.n = n;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof Key && ((Key) obj).name.equals(name) && ((Key) obj).n == n;
+    }
+
+    @Override
+    public int hashCode() {
+      return name.hashCode() + n;
+    }
+  }
+
+  private static final Object[] KEYS = { "k1", "", "a:b", "1Sx", "quote\"back\\slash", "ctl\n\t\u0001\u001f", "/\u00e9", "\uD83D\uDE00", 0L, -1L,
+      Long.MAX_VALUE, Long.MIN_VALUE, 42, Integer.MAX_VALUE, Integer.MIN_VALUE, (short) 7, 2.5d, Boolean.TRUE, new Key("x\"y", 3) };
+
+  public static void main(String[] args) throws Exception {
+    roundTrip();
+    legacyMatchesJsonObject();
+    decodesBothFormats();
+    rejectsBadIds();
+    System.out.println("SolrIdCodecTest OK");
+  }
+
+  static void roundTrip() throws Exception {
+    for (String format : new String[] { SolrIdCodec.LEGACY, SolrIdCodec.COMPACT }) {
+      SolrIdCodec codec = new SolrIdCodec(MAP, format);
+      for (Object key : KEYS) {
+        String id = codec.encode(key);
+        check(id.startsWith(MAP + ":"), format + ": id without map prefix: " + id);
+        Object decoded = codec.decode(id);
+        checkEquals(key, decoded, format + ": round trip of " + id);
+        checkEquals(key.getClass(), decoded.getClass(), format + ": key class of " + id);
+      }
+    }
+  }
+
+  /**
+   * legacyʽǰJsonObjectƴidȫͬ,load()Ҳеĵ
+   */
+  static void legacyMatchesJsonObject() throws Exception {
+    SolrIdCodec codec = new SolrIdCodec(MAP, null);
+    for (Object key : KEYS) {
+      JsonObject jsonKey = new JsonObject();
+      if (key instanceof String) {
+        jsonKey.putString("C", "S").putString("V", (String) key);
+      } else {
+        jsonKey.putString("C", key.getClass().getName()).putString("V", JsonObject.toJson(key));
+      }
+      checkEquals(MAP + ":" + jsonKey.encode(), codec.encode(key), "legacy id");
+    }
+  }
+
+  /**
+   * idFormat֮ǰдidܽ
+   */
+  static void decodesBothFormats() throws Exception {
+    SolrIdCodec legacy = new SolrIdCodec(MAP, SolrIdCodec.LEGACY);
+    SolrIdCodec compact = new SolrIdCodec(MAP, SolrIdCodec.COMPACT);
+    for (Object key : KEYS) {
+      checkEquals(key, legacy.decode(compact.encode(key)), "legacy codec decoding compact id");
+      checkEquals(key, compact.decode(legacy.encode(key)), "compact codec decoding legacy id");
+    }
+    checkEquals(MAP + ":1L123", compact.encode(123L), "compact Long id");
+    checkEquals(MAP + ":1Sabc", compact.encode("abc"), "compact String id");
+  }
+
+  static void rejectsBadIds() throws Exception {
+    SolrIdCodec codec = new SolrIdCodec(MAP, SolrIdCodec.COMPACT);
+    String[] badIds = { MAP + ":1L", MAP + ":1L-", MAP + ":1L12x", MAP + ":1L9223372036854775808", MAP + ":1I2147483648", MAP + ":1X1",
+        MAP + ":1Jno.such.Class" };
+    for (String id : badIds) {
+      try {
+        Object key = codec.decode(id);
+        throw new AssertionError("bad id decoded: " + id + " -> " + key);
+      } catch (AssertionError e) {
+        throw e;
+      } catch (Exception e) {
+        //쳣
+      }
+    }
+
+    try {
+      new SolrIdCodec(MAP, "nope");
+      throw new AssertionError("unknown idFormat accepted");
+    } catch (IllegalArgumentException e) {
+      //쳣
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package org.hazelcast.server.persistence;
+
+import static org.hazelcast.server.persistence.SolrTestSupport.check;
+import static org.hazelcast.server.persistence.SolrTestSupport.checkEquals;
+
+import java.util.Random;
+
+import org.wjw.efjson.JsonObject;
+
+public class SolrJsonCodecTest {
+  public static void main(String[] args) throws Exception {
+    writeStringMatchesJsonObject();
+    classForNameIsCached();
+    System.out.println("SolrJsonCodecTest OK");
+  }
+
+  /**
+   * writeString()תJsonObject.toJson()ȫͬ,legacyʽidƴ
+   */
+  static void writeStringMatchesJsonObject() throws Exception {
+    StringBuilder all = new StringBuilder();
+    for (char c = 0; c < 0x80; c++) {
+      all.append(c);
+    }
+    String[] samples = { "", "plain", all.toString(), "\"\\/", "\u007f\u0080\u00ff\u2028\u2029", "", "\uD83D\uDE00", "tail\u0000" };
+    for (String s : samples) {
+      checkWriteString(s);
+    }
+
+    Random random = new Random(17);
+    for (int i = 0; i < 2000; i++) {
+      char[] chars = new char[random.nextInt(20)];
+      for (int j = 0; j < chars.length; j++) {
+        chars[j] = (char) (random.nextBoolean() ? random.nextInt(0x80) : random.nextInt(0xD800));
+      }
+      checkWriteString(new String(chars));
+    }
+  }
+
+  private static void checkWriteString(String s) {
+    StringBuilder sb = new StringBuilder("prefix:");
+    SolrJsonCodec.writeString(sb, s);
+    checkEquals("prefix:" + JsonObject.toJson(s), sb.toString(), "writeString");
+  }
+
+  static void classForNameIsCached() throws Exception {
+    String name = SolrJsonCodecTest.class.getName();
+    check(SolrJsonCodec.classForName(name) == SolrJsonCodecTest.class, "classForName");
+    check(SolrJsonCodec.classForName(name) == SolrJsonCodec.classForName(name), "classForName cache");
+    try {
+      SolrJsonCodec.classForName("no.such.Class");
+      throw new AssertionError("unknown class resolved");
+    } catch (ClassNotFoundException e) {
+      //쳣
+    }
+  }
+}
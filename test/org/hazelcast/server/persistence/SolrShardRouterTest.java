@@ -0,0 +1,160 @@
+package org.hazelcast.server.persistence;
+
+import static org.hazelcast.server.persistence.SolrTestSupport.check;
+import static org.hazelcast.server.persistence.SolrTestSupport.checkEquals;
+
+import java.util.Random;
+
+import org.wjw.efjson.JsonArray;
+import org.wjw.efjson.JsonObject;
+
+public class SolrShardRouterTest {
+  private static final String CORE = "collection1";
+
+  public static void main(String[] args) throws Exception {
+    hashMatchesUtf8Murmur3();
+    routesByHashRange();
+    unroutableStates();
+    System.out.println("SolrShardRouterTest OK");
+  }
+
+  /**
+   * ֱӶַhashͶUTF-8ֽı׼MurmurHash3(ҲSolr)ͬ
+   */
+  static void hashMatchesUtf8Murmur3() throws Exception {
+    checkEquals(0x248bfa47, SolrShardRouter.murmurhash3_x86_32("hello", 0, 5, 0), "murmur3(hello)");
+    checkEquals(0, SolrShardRouter.murmurhash3_x86_32("", 0, 0, 0), "murmur3(empty)");
+
+    Random random = new Random(5);
+    for (int i = 0; i < 5000; i++) {
+      StringBuilder sb = new StringBuilder();
+      int len = random.nextInt(24);
+      for (int j = 0; j < len; j++) {
+        switch (random.nextInt(4)) {
+        case 0:
+          sb.append((char) random.nextInt(0x80));
+          break;
+        case 1:
+          sb.append((char) (0x80 + random.nextInt(0x780)));
+          break;
+        case 2:
+          sb.append((char) (0x800 + random.nextInt(0xD800 - 0x800)));
+          break;
+        default:
+          sb.appendCodePoint(0x10000 + random.nextInt(0x100000)); //ɶԵĴַ
+        }
+      }
+      String s = sb.toString();
+      checkEquals(murmur3(s.getBytes("UTF-8"), 0), SolrShardRouter.murmurhash3_x86_32(s, 0, s.length(), 0), "murmur3 of " + s);
+    }
+  }
+
+  static void routesByHashRange() throws Exception {
+    JsonArray state = new JsonArray();
+    state.addObject(replica("shard1", "80000000-bfffffff", "http://n1/solr", true, "active", null));
+    state.addObject(replica("shard1", "80000000-bfffffff", "http://n1b/solr", false, "active", null));
+    state.addObject(replica("shard2", "c0000000-ffffffff", "http://n2/solr", true, "active", null));
+    state.addObject(replica("shard3", "0-3fffffff", "http://n3/solr", true, "active", null));
+    state.addObject(replica("shard4", "40000000-7fffffff", "http://n4/solr", true, "active", "active"));
+    state.addObject(replica("shard0", "0-7fffffff", "http://old/solr", true, "active", "inactive")); //splitԺľshard
+    SolrShardRouter router = SolrShardRouter.build(state, CORE);
+    checkEquals(4, router.getShardCount(), "shards");
+
+    int[] counts = new int[4];
+    for (int i = 0; i < 4000; i++) {
+      String id = "map:{\"C\":\"S\",\"V\":\"k" + i + "\"}";
+      int hash = SolrShardRouter.murmurhash3_x86_32(id, 0, id.length(), 0);
+      String expected;
+      if (hash >= 0x80000000 && hash <= 0xbfffffff) {
+        expected = "http://n1/solr/" + CORE + "/update";
+        counts[0]++;
+      } else if (hash >= 0xc0000000 && hash <= 0xffffffff) {
+        expected = "http://n2/solr/" + CORE + "/update";
+        counts[1]++;
+      } else if (hash >= 0 && hash <= 0x3fffffff) {
+        expected = "http://n3/solr/" + CORE + "/update";
+        counts[2]++;
+      } else {
+        expected = "http://n4/solr/" + CORE + "/update";
+        counts[3]++;
+      }
+      checkEquals(expected, router.getLeaderUpdateUrl(id), "leader of " + id);
+    }
+    for (int count : counts) {
+      check(count > 800, "ids are not spread over the shards");
+    }
+
+    checkEquals(null, router.getLeaderUpdateUrl("tenant!k1"), "compositeId with '!' is routed");
+  }
+
+  /**
+   * ûrangeshardûactiveleaderʱ·
+   */
+  static void unroutableStates() throws Exception {
+    JsonArray noRange = new JsonArray();
+    noRange.addObject(replica("shard1", null, "http://n1/solr", true, "active", null));
+    checkEquals(null, SolrShardRouter.build(noRange, CORE).getLeaderUpdateUrl("map:k"), "routed without range");
+
+    JsonArray leaderDown = new JsonArray();
+    leaderDown.addObject(replica("shard1", "0-7fffffff", "http://n1/solr", true, "down", null));
+    checkEquals(0, SolrShardRouter.build(leaderDown, CORE).getShardCount(), "shard with a down leader");
+
+    checkEquals(null, SolrShardRouter.build(new JsonArray(), CORE).getLeaderUpdateUrl("map:k"), "routed without shards");
+  }
+
+  private static JsonObject replica(String shard, String range, String baseUrl, boolean leader, String state, String shardState) {
+    JsonObject replica = new JsonObject().putString("shard", shard).putString("base_url", baseUrl).putString("state", state).putString("core", CORE);
+    if (range != null) {
+      replica.putString("range", range);
+    }
+    if (leader) {
+      replica.putString("leader", "true");
+    }
+    if (shardState != null) {
+      replica.putString("shard_state", shardState);
+    }
+    return replica;
+  }
+
+  /**
+   * ׼MurmurHash3_x86_32,byte[]
+   */
+  @SuppressWarnings("fallthrough")
+  private static int murmur3(byte[] data, int seed) {
+    final int c1 = 0xcc9e2d51;
+    final int c2 = 0x1b873593;
+    int h1 = seed;
+    int roundedEnd = data.length & 0xfffffffc;
+    for (int i = 0; i < roundedEnd; i += 4) {
+      int k1 = (data[i] & 0xff) | ((data[i + 1] & 0xff) << 8) | ((data[i + 2] & 0xff) << 16) | (data[i + 3] << 24);
+      k1 *= c1;
+      k1 = Integer.rotateLeft(k1, 15);
+      k1 *= c2;
+      h1 ^= k1;
+      h1 = Integer.rotateLeft(h1, 13);
+      h1 = h1 * 5 + 0xe6546b64;
+    }
+    int k1 = 0;
+    switch (data.length & 0x03) {
+    case 3:
+      k1 = (data[roundedEnd + 2] & 0xff) << 16;
+      //
+    case 2:
+      k1 |= (data[roundedEnd + 1] & 0xff) << 8;
+      //
+    case 1:
+      k1 |= (data[roundedEnd] & 0xff);
+      k1 *= c1;
+      k1 = Integer.rotateLeft(k1, 15);
+      k1 *= c2;
+      h1 ^= k1;
+    }
+    h1 ^= data.length;
+    h1 ^= h1 >>> 16;
+    h1 *= 0x85ebca6b;
+    h1 ^= h1 >>> 13;
+    h1 *= 0xc2b2ae35;
+    h1 ^= h1 >>> 16;
+    return h1;
+  }
+}
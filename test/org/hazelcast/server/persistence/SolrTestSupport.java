@@ -0,0 +1,38 @@
+package org.hazelcast.server.persistence;
+
+/**
+ * õĶ.ĿûJUnit,ÿ඼һmain(),AllTestsͳһ,ʧʱ׳AssertionError
+ */
+public class SolrTestSupport {
+  private SolrTestSupport() {
+  }
+
+  public static void check(boolean condition, String message) {
+    if (!condition) {
+      throw new AssertionError(message);
+    }
+  }
+
+  public static void checkEquals(Object expected, Object actual, String message) {
+    if (expected == null ? actual != null : !expected.equals(actual)) {
+      throw new AssertionError(message + ": expected <" + expected + "> but was <" + actual + ">");
+    }
+  }
+
+  /**
+   * ȴcondition,ʱʧ
+   */
+  public static void waitFor(Condition condition, long timeoutMillis, String message) throws Exception {
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    while (!condition.isTrue()) {
+      if (System.currentTimeMillis() > deadline) {
+        throw new AssertionError("timeout: " + message);
+      }
+      Thread.sleep(10);
+    }
+  }
+
+  public interface Condition {
+    boolean isTrue() throws Exception;
+  }
+}
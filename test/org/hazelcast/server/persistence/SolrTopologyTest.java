@@ -0,0 +1,103 @@
+package org.hazelcast.server.persistence;
+
+import static org.hazelcast.server.persistence.SolrTestSupport.check;
+import static org.hazelcast.server.persistence.SolrTestSupport.checkEquals;
+
+/**
+ * ñصSolr׮SolrTopology:ʱˢµļúܳ,ֱӵrun()ˢһ
+ */
+public class SolrTopologyTest {
+  private static final long NO_REFRESH = 3600 * 1000L;
+
+  public static void main(String[] args) throws Exception {
+    unchangedStateKeepsSnapshot();
+    liveNodesChangeMarksReplicasDown();
+    clusterStatusFailureFallsBackToClusterState();
+    System.out.println("SolrTopologyTest OK");
+  }
+
+  private static SolrTopology acquire(StubSolrServer stub) {
+    return SolrTopology.acquire(stub.getBaseUrl(), StubSolrServer.CORE_NAME, 3000, 3000, NO_REFRESH);
+  }
+
+  /**
+   * znodeVersionlive_nodesû(live_nodesֻǻ˳)ʱµĿ
+   */
+  static void unchangedStateKeepsSnapshot() throws Exception {
+    StubSolrServer stub = new StubSolrServer();
+    SolrTopology topology = acquire(stub);
+    try {
+      SolrTopology.Snapshot first = topology.getSnapshot();
+      checkEquals(2, first.getUpdateUrls().size(), "update urls");
+      checkEquals(2, first.getRouter().getShardCount(), "shards");
+
+      int requests = stub.getClusterStatusRequests();
+      topology.run();
+      stub.reverseLiveNodes();
+      topology.run();
+      checkEquals(requests + 2, stub.getClusterStatusRequests(), "CLUSTERSTATUS requests");
+      check(topology.getSnapshot() == first, "snapshot republished without a change");
+
+      stub.setZnodeVersion(2);
+      topology.run();
+      check(topology.getSnapshot() != first, "snapshot not republished after znodeVersion changed");
+    } finally {
+      topology.release();
+      stub.stop();
+    }
+  }
+
+  /**
+   * ڵlive_nodesʧԺ,ĸdown,ٽո,shardҲܰhash·
+   */
+  static void liveNodesChangeMarksReplicasDown() throws Exception {
+    StubSolrServer stub = new StubSolrServer();
+    SolrTopology topology = acquire(stub);
+    try {
+      SolrTopology.Snapshot first = topology.getSnapshot();
+      check(first.getUpdateUrls().contains(stub.getNode2UpdateUrl()), "node2 missing before it went down");
+
+      stub.killNode2(); //znodeVersion:ZooKeeperĸ״̬ҪOverseer
+      topology.run();
+      SolrTopology.Snapshot second = topology.getSnapshot();
+      check(second != first, "snapshot not republished after live_nodes changed");
+      checkEquals(1, second.getUpdateUrls().size(), "update urls after node2 went down");
+      checkEquals(stub.getNode1UpdateUrl(), second.getUpdateUrls().get(0), "remaining update url");
+      checkEquals(1, second.getRouter().getShardCount(), "routable shards after node2 went down");
+      checkEquals(stub.getNode1UpdateUrl(), topology.nextUpdateUrl(), "nextUpdateUrl");
+    } finally {
+      topology.release();
+      stub.stop();
+    }
+  }
+
+  /**
+   * CLUSTERSTATUSʧʱ˻ص/clusterstate.json,֮ÿLEGACY_REFRESH_INTERVALŶһ
+   */
+  static void clusterStatusFailureFallsBackToClusterState() throws Exception {
+    StubSolrServer stub = new StubSolrServer();
+    SolrTopology topology = acquire(stub);
+    try {
+      SolrTopology.Snapshot first = topology.getSnapshot();
+      checkEquals(0, stub.getClusterStateRequests(), "clusterstate.json read while CLUSTERSTATUS works");
+
+      stub.setClusterStatusFails(true);
+      stub.killNode2(); //clusterstate.jsonûlive_nodes,active
+      topology.run();
+      checkEquals(1, stub.getClusterStateRequests(), "clusterstate.json requests after CLUSTERSTATUS failed");
+      SolrTopology.Snapshot legacy = topology.getSnapshot();
+      check(legacy != null && legacy != first, "snapshot from clusterstate.json not published");
+      checkEquals(2, legacy.getUpdateUrls().size(), "update urls from clusterstate.json");
+      checkEquals(2, legacy.getRouter().getShardCount(), "shards from clusterstate.json");
+
+      int statusRequests = stub.getClusterStatusRequests();
+      topology.run(); //ûһζȡclusterstate.jsonʱ
+      checkEquals(1, stub.getClusterStateRequests(), "clusterstate.json polled before the legacy interval");
+      checkEquals(statusRequests, stub.getClusterStatusRequests(), "CLUSTERSTATUS retried before the legacy interval");
+      check(topology.getSnapshot() == legacy, "snapshot changed between legacy refreshes");
+    } finally {
+      topology.release();
+      stub.stop();
+    }
+  }
+}
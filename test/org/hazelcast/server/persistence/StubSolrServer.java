@@ -0,0 +1,148 @@
+package org.hazelcast.server.persistence;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.wjw.efjson.JsonArray;
+import org.wjw.efjson.JsonObject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * صSolr׮,ֻʵSolrTopologyõӿ:
+ * /solr/admin/collections?action=CLUSTERSTATUS  /solr/zookeeper?path=/clusterstate.json.
+ * Ⱥshard,һleader,ֱnode1node2;node1׮Լ,node2ֻһ.
+ */
+public class StubSolrServer {
+  public static final String CORE_NAME = "collection1";
+
+  private final HttpServer _server;
+  private final String _baseUrl;
+  private final String _node1;
+  private final String _node2 = "127.0.0.2:8983_solr";
+
+  private volatile int _znodeVersion = 1;
+  private volatile List<String> _liveNodes;
+  private volatile boolean _clusterStatusFails = false;
+
+  private final AtomicInteger _clusterStatusRequests = new AtomicInteger();
+  private final AtomicInteger _clusterStateRequests = new AtomicInteger();
+
+  public StubSolrServer() throws IOException {
+    _server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    int port = _server.getAddress().getPort();
+    _baseUrl = "http://127.0.0.1:" + port + "/solr";
+    _node1 = "127.0.0.1:" + port + "_solr";
+    _liveNodes = new ArrayList<String>();
+    _liveNodes.add(_node1);
+    _liveNodes.add(_node2);
+
+    _server.createContext("/solr/admin/collections", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        _clusterStatusRequests.incrementAndGet();
+        if (_clusterStatusFails) { //Solr 4.8ǰûCLUSTERSTATUS
+          reply(exchange, 400, new JsonObject().putObject("responseHeader", new JsonObject().putNumber("status", 400)));
+          return;
+        }
+        JsonObject collection = new JsonObject().putObject("shards", shards()).putNumber("znodeVersion", _znodeVersion);
+        JsonObject cluster = new JsonObject().putObject("collections", new JsonObject().putObject(CORE_NAME, collection));
+        JsonArray liveNodes = new JsonArray();
+        for (String node : _liveNodes) {
+          liveNodes.addString(node);
+        }
+        cluster.putArray("live_nodes", liveNodes);
+        reply(exchange, 200, new JsonObject().putObject("responseHeader", new JsonObject().putNumber("status", 0)).putObject("cluster", cluster));
+      }
+    });
+    _server.createContext("/solr/zookeeper", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        _clusterStateRequests.incrementAndGet();
+        String data = new JsonObject().putObject(CORE_NAME, new JsonObject().putObject("shards", shards())).encode();
+        reply(exchange, 200, new JsonObject().putObject("znode", new JsonObject().putString("path", "/clusterstate.json").putString("data", data)));
+      }
+    });
+    _server.start();
+  }
+
+  private JsonObject shards() {
+    JsonObject shards = new JsonObject();
+    shards.putObject("shard1", shard("80000000-ffffffff", "core_node1", _node1, _baseUrl));
+    shards.putObject("shard2", shard("0-7fffffff", "core_node2", _node2, "http://127.0.0.2:8983/solr"));
+    return shards;
+  }
+
+  private static JsonObject shard(String range, String replicaName, String nodeName, String baseUrl) {
+    JsonObject replica = new JsonObject().putString("state", "active").putString("base_url", baseUrl).putString("core", CORE_NAME)
+        .putString("node_name", nodeName).putString("leader", "true");
+    return new JsonObject().putString("range", range).putString("state", "active").putObject("replicas", new JsonObject().putObject(replicaName, replica));
+  }
+
+  private static void reply(HttpExchange exchange, int status, JsonObject body) throws IOException {
+    InputStream in = exchange.getRequestBody();
+    while (in.read() >= 0) {
+    }
+    byte[] bytes = body.encode().getBytes("UTF-8");
+    exchange.getResponseHeaders().set("Content-Type", "application/json;charset=UTF-8");
+    exchange.sendResponseHeaders(status, bytes.length);
+    OutputStream out = exchange.getResponseBody();
+    out.write(bytes);
+    out.close();
+  }
+
+  public void stop() {
+    _server.stop(0);
+  }
+
+  public String getBaseUrl() {
+    return _baseUrl;
+  }
+
+  public String getNode1UpdateUrl() {
+    return _baseUrl + "/" + CORE_NAME + "/update";
+  }
+
+  public String getNode2UpdateUrl() {
+    return "http://127.0.0.2:8983/solr/" + CORE_NAME + "/update";
+  }
+
+  public void setZnodeVersion(int znodeVersion) {
+    _znodeVersion = znodeVersion;
+  }
+
+  /**
+   * ılive_nodes˳,ݲ
+   */
+  public void reverseLiveNodes() {
+    List<String> liveNodes = new ArrayList<String>(_liveNodes);
+    Collections.reverse(liveNodes);
+    _liveNodes = liveNodes;
+  }
+
+  public void killNode2() {
+    List<String> liveNodes = new ArrayList<String>(_liveNodes);
+    liveNodes.remove(_node2);
+    _liveNodes = liveNodes;
+  }
+
+  public void setClusterStatusFails(boolean clusterStatusFails) {
+    _clusterStatusFails = clusterStatusFails;
+  }
+
+  public int getClusterStatusRequests() {
+    return _clusterStatusRequests.get();
+  }
+
+  public int getClusterStateRequests() {
+    return _clusterStateRequests.get();
+  }
+}